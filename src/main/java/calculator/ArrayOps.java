@@ -0,0 +1,341 @@
+package calculator;
+
+import static calculator.SyntaxTree.ADD;
+import static calculator.SyntaxTree.COS;
+import static calculator.SyntaxTree.DIV;
+import static calculator.SyntaxTree.LOG;
+import static calculator.SyntaxTree.MUL;
+import static calculator.SyntaxTree.NEG;
+import static calculator.SyntaxTree.SIN;
+import static calculator.SyntaxTree.SQRT;
+import static calculator.SyntaxTree.SUB;
+
+import java.util.stream.IntStream;
+
+/**
+ * Element-wise operations and reductions over {@code double[]} values, with
+ * scalars ({@code Double}) broadcast against arrays.
+ * <p>
+ * Operators and functions are identified by the {@link SyntaxTree} opcodes.
+ * Each loop runs over a plain array with the operation selected outside of
+ * it. Arrays of {@link #PARALLEL_THRESHOLD} elements or more are
+ * processed in chunks of {@link #CHUNK} elements on the common fork-join
+ * pool. Reductions combine per-chunk partial results in chunk order, hence
+ * results only depend on the array length, not on the number of threads.
+ */
+final class ArrayOps {
+
+	static final int PARALLEL_THRESHOLD = 1 << 15;
+	static final int CHUNK = 1 << 13;
+
+	private ArrayOps() {
+	}
+
+	private interface ChunkTask {
+		void run(int from, int to);
+	}
+
+	private static void forEachChunk(int length, ChunkTask task) {
+		if (length < PARALLEL_THRESHOLD) {
+			task.run(0, length);
+		} else {
+			IntStream.range(0, chunks(length)).parallel()
+					.forEach(chunk -> task.run(chunk * CHUNK, Math.min(length, (chunk + 1) * CHUNK)));
+		}
+	}
+
+	private static int chunks(int length) {
+		return (length + CHUNK - 1) / CHUNK;
+	}
+
+	static Object binary(byte op, Object left, Object right) {
+		if (left instanceof Double && right instanceof Double) {
+			return apply(op, (Double) left, (Double) right);
+		} else if (left instanceof Double) {
+			double a = (Double) left;
+			double[] b = (double[]) right;
+			double[] result = new double[b.length];
+			forEachChunk(b.length, (from, to) -> scalarArray(op, a, b, result, from, to));
+			return result;
+		} else if (right instanceof Double) {
+			double[] a = (double[]) left;
+			double b = (Double) right;
+			double[] result = new double[a.length];
+			forEachChunk(a.length, (from, to) -> arrayScalar(op, a, b, result, from, to));
+			return result;
+		}
+		double[] a = (double[]) left;
+		double[] b = (double[]) right;
+		if (a.length != b.length) {
+			throw new EvaluationException(
+					String.format("Array lengths differ: %s and %s elements", a.length, b.length));
+		}
+		double[] result = new double[a.length];
+		forEachChunk(a.length, (from, to) -> arrayArray(op, a, b, result, from, to));
+		return result;
+	}
+
+	static Object map(byte op, Object arg) {
+		if (arg instanceof Double) {
+			return apply(op, (Double) arg);
+		}
+		double[] a = (double[]) arg;
+		double[] result = new double[a.length];
+		forEachChunk(a.length, (from, to) -> map(op, a, result, from, to));
+		return result;
+	}
+
+	static double sum(Object arg) {
+		if (arg instanceof Double) {
+			return (Double) arg;
+		}
+		double[] a = (double[]) arg;
+		if (a.length < PARALLEL_THRESHOLD) {
+			return sum(a, 0, a.length);
+		}
+		double[] partials = new double[chunks(a.length)];
+		forEachChunk(a.length, (from, to) -> partials[from / CHUNK] = sum(a, from, to));
+		return sum(partials, 0, partials.length);
+	}
+
+	static double mean(Object arg) {
+		if (arg instanceof Double) {
+			return (Double) arg;
+		}
+		return sum(arg) / ((double[]) arg).length;
+	}
+
+	static double min(Object arg) {
+		if (arg instanceof Double) {
+			return (Double) arg;
+		}
+		double[] a = (double[]) arg;
+		if (a.length == 0) {
+			return Double.NaN;
+		} else if (a.length < PARALLEL_THRESHOLD) {
+			return min(a, 0, a.length);
+		}
+		double[] partials = new double[chunks(a.length)];
+		forEachChunk(a.length, (from, to) -> partials[from / CHUNK] = min(a, from, to));
+		return min(partials, 0, partials.length);
+	}
+
+	static double max(Object arg) {
+		if (arg instanceof Double) {
+			return (Double) arg;
+		}
+		double[] a = (double[]) arg;
+		if (a.length == 0) {
+			return Double.NaN;
+		} else if (a.length < PARALLEL_THRESHOLD) {
+			return max(a, 0, a.length);
+		}
+		double[] partials = new double[chunks(a.length)];
+		forEachChunk(a.length, (from, to) -> partials[from / CHUNK] = max(a, from, to));
+		return max(partials, 0, partials.length);
+	}
+
+	/**
+	 * @return number of elements of {@code range(start,stop,step)}, 0 when
+	 *         {@code stop} is not reached from {@code start}
+	 * @throws EvaluationException when the bounds or the step are not finite,
+	 *             the step is zero or the range exceeds {@code maxLength}
+	 *             elements
+	 */
+	static int rangeLength(double start, double stop, double step, int maxLength) {
+		if (step == 0 || Double.isNaN(step) || Double.isInfinite(step) || Double.isNaN(start)
+				|| Double.isInfinite(start) || Double.isNaN(stop) || Double.isInfinite(stop)) {
+			throw new EvaluationException("range bounds and step must be finite, and the step non-zero");
+		}
+		double count = Math.ceil((stop - start) / step);
+		if (count > maxLength) {
+			throw new EvaluationException(
+					String.format("range of %.0f elements exceeds the limit of %d", count, maxLength));
+		}
+		return count > 0 ? (int) count : 0;
+	}
+
+	/**
+	 * @param length as computed by {@link #rangeLength}
+	 * @return {@code start}, {@code start + step}, ... up to {@code length}
+	 *         elements
+	 */
+	static double[] range(double start, double step, int length) {
+		double[] result = new double[length];
+		forEachChunk(result.length, (from, to) -> {
+			for (int i = from; i < to; i++) {
+				result[i] = start + i * step;
+			}
+		});
+		return result;
+	}
+
+	private static double apply(byte op, double a, double b) {
+		switch (op) {
+		case ADD:
+			return a + b;
+		case SUB:
+			return a - b;
+		case MUL:
+			return a * b;
+		case DIV:
+			return a / b;
+		default:
+			throw new IllegalArgumentException("not a binary opcode: " + op);
+		}
+	}
+
+	private static double apply(byte op, double a) {
+		switch (op) {
+		case NEG:
+			return -a;
+		case SQRT:
+			return Math.sqrt(a);
+		case LOG:
+			return Math.log(a);
+		case SIN:
+			return Math.sin(a);
+		case COS:
+			return Math.cos(a);
+		default:
+			throw new IllegalArgumentException("not a function opcode: " + op);
+		}
+	}
+
+	private static void arrayArray(byte op, double[] a, double[] b, double[] result, int from, int to) {
+		switch (op) {
+		case ADD:
+			for (int i = from; i < to; i++) {
+				result[i] = a[i] + b[i];
+			}
+			break;
+		case SUB:
+			for (int i = from; i < to; i++) {
+				result[i] = a[i] - b[i];
+			}
+			break;
+		case MUL:
+			for (int i = from; i < to; i++) {
+				result[i] = a[i] * b[i];
+			}
+			break;
+		case DIV:
+			for (int i = from; i < to; i++) {
+				result[i] = a[i] / b[i];
+			}
+			break;
+		default:
+			throw new IllegalArgumentException("not a binary opcode: " + op);
+		}
+	}
+
+	private static void arrayScalar(byte op, double[] a, double b, double[] result, int from, int to) {
+		switch (op) {
+		case ADD:
+			for (int i = from; i < to; i++) {
+				result[i] = a[i] + b;
+			}
+			break;
+		case SUB:
+			for (int i = from; i < to; i++) {
+				result[i] = a[i] - b;
+			}
+			break;
+		case MUL:
+			for (int i = from; i < to; i++) {
+				result[i] = a[i] * b;
+			}
+			break;
+		case DIV:
+			for (int i = from; i < to; i++) {
+				result[i] = a[i] / b;
+			}
+			break;
+		default:
+			throw new IllegalArgumentException("not a binary opcode: " + op);
+		}
+	}
+
+	private static void scalarArray(byte op, double a, double[] b, double[] result, int from, int to) {
+		switch (op) {
+		case ADD:
+			for (int i = from; i < to; i++) {
+				result[i] = a + b[i];
+			}
+			break;
+		case SUB:
+			for (int i = from; i < to; i++) {
+				result[i] = a - b[i];
+			}
+			break;
+		case MUL:
+			for (int i = from; i < to; i++) {
+				result[i] = a * b[i];
+			}
+			break;
+		case DIV:
+			for (int i = from; i < to; i++) {
+				result[i] = a / b[i];
+			}
+			break;
+		default:
+			throw new IllegalArgumentException("not a binary opcode: " + op);
+		}
+	}
+
+	private static void map(byte op, double[] a, double[] result, int from, int to) {
+		switch (op) {
+		case NEG:
+			for (int i = from; i < to; i++) {
+				result[i] = -a[i];
+			}
+			break;
+		case SQRT:
+			for (int i = from; i < to; i++) {
+				result[i] = Math.sqrt(a[i]);
+			}
+			break;
+		case LOG:
+			for (int i = from; i < to; i++) {
+				result[i] = Math.log(a[i]);
+			}
+			break;
+		case SIN:
+			for (int i = from; i < to; i++) {
+				result[i] = Math.sin(a[i]);
+			}
+			break;
+		case COS:
+			for (int i = from; i < to; i++) {
+				result[i] = Math.cos(a[i]);
+			}
+			break;
+		default:
+			throw new IllegalArgumentException("not a function opcode: " + op);
+		}
+	}
+
+	private static double sum(double[] a, int from, int to) {
+		double sum = 0;
+		for (int i = from; i < to; i++) {
+			sum += a[i];
+		}
+		return sum;
+	}
+
+	private static double min(double[] a, int from, int to) {
+		double min = Double.POSITIVE_INFINITY;
+		for (int i = from; i < to; i++) {
+			min = Math.min(min, a[i]);
+		}
+		return min;
+	}
+
+	private static double max(double[] a, int from, int to) {
+		double max = Double.NEGATIVE_INFINITY;
+		for (int i = from; i < to; i++) {
+			max = Math.max(max, a[i]);
+		}
+		return max;
+	}
+}
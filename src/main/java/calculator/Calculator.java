@@ -1,12 +1,32 @@
 package calculator;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+import calculator.admission.AdmissionController;
+import calculator.admission.AdmissionController.Ticket;
+import calculator.admission.Budget;
+import calculator.admission.CostEstimate;
+import calculator.audit.AuditLog;
+import calculator.format.DoubleFormatter;
+import calculator.numeric.IntegrationResult;
+import calculator.numeric.Integrator;
+import calculator.numeric.RootFinder;
+import calculator.numeric.RootResult;
 
 /**
  * A simple calculator program reading arithmetic expressions from the standard
@@ -21,21 +41,39 @@ public class Calculator {
 	 *   expr ::= expr binop expr | '-' expr | '(' expr ')' | binding | term | function <br>
 	 *   binop ::= '+' | '-' | '*' | '/' <br>
 	 *   binding ::= identifier '=' expr <br>
-	 *   term ::= number | identifier <br>
-	 *   number ::= integer | decimal <br>
+	 *   term ::= number | identifier | array <br>
+	 *   number ::= ( integer | decimal ) exponent? <br>
 	 *   integer ::= '0' | ('1' - '9') ('0' - '9')* <br>
 	 *   decimal ::= ( integer )? '.' ('0' - '9')* <br>
+	 *   exponent ::= ('e' | 'E') ('+' | '-')? ('0' - '9')+ <br>
 	 *   identifier ::= ('a' - 'z' | 'A' - 'Z') ('a' - 'z' | 'A' - 'Z' | '0' - '9')* <br>
-	 *   function ::= ('sqrt' | 'log' | 'sin' | 'cos') '(' expr ')' <br>
+	 *   array ::= '[' expr (',' expr)* ']' <br>
+	 *   function ::= ('sqrt' | 'log' | 'sin' | 'cos' | 'sum' | 'mean' | 'min' | 'max') '(' expr ')'
+	 *   | 'range' '(' expr ',' expr ',' expr ')' <br>
 	 * </code>
 	 * <p>
 	 * To keep things simple, whitespace is not allowed in expressions.
 	 * <p>
 	 * Evaluation of binary operators follows the convention that multiplication
-	 * and division take precedence over addition and subtraction.
+	 * and division take precedence over addition and subtraction. Binary
+	 * operators are left associative, unary minus binds tighter than any of
+	 * them: {@code -2*3} is {@code (-2)*3}.
+	 * <p>
+	 * Bindings are right associative and only allowed outside of
+	 * parentheses, {@code a=b=1} binds both variables to 1.
 	 * <p>
 	 * Functions are implemented in terms of the respective static methods in
 	 * java.lang.Math.
+	 * A function name not followed by '(' is an identifier: {@code sum=1}
+	 * binds a variable named sum, and {@code sum(sum)} calls the function on
+	 * it.
+	 * <p>
+	 * Arrays are built from literals or with {@code range(start,stop,step)},
+	 * {@code stop} being excluded. Operators and functions apply element-wise,
+	 * scalars being broadcast against arrays of any length. {@code sum},
+	 * {@code mean}, {@code min} and {@code max} reduce an array to a scalar.
+	 * Array-valued expressions must be evaluated with {@link #evalArray} or
+	 * {@link #tryEval}; this method rejects them.
 	 * <p>
 	 * The bindings produced during the evaluation of the given expression
 	 * are stored in a map, where they remain available for the evaluation
@@ -49,18 +87,326 @@ public class Calculator {
 	 */
 	public double eval(String expr) {
 		
+		Evaluator evaluator = evaluator();
+		if (audit == null) {
+			return evaluator.eval(expr);
+		}
+		try {
+			double value = evaluator.eval(expr);
+			audit.record(session, AuditLog.ENTRY_EVAL, expr, value);
+			return value;
+		} catch (RuntimeException ex) {
+			audit.record(session, AuditLog.ENTRY_EVAL, expr, ex);
+			throw ex;
+		}
+	}
+
+	/**
+	 * Evaluates an array-valued expression, see {@link #eval} for the
+	 * grammar. The array is bound to "_" and to the assigned variable, if
+	 * any.
+	 */
+	public double[] evalArray(String expr) {
+		Evaluator evaluator = evaluator();
+		if (audit == null) {
+			return evaluator.evalArray(expr);
+		}
+		try {
+			double[] value = evaluator.evalArray(expr);
+			audit.record(session, AuditLog.ENTRY_EVAL_ARRAY, expr, value);
+			return value;
+		} catch (RuntimeException ex) {
+			audit.record(session, AuditLog.ENTRY_EVAL_ARRAY, expr, ex);
+			throw ex;
+		}
+	}
+
+	/**
+	 * Evaluates an arithmetic expression like {@link #eval}, reporting
+	 * rejected expressions through the returned value instead of throwing.
+	 * Bindings are only updated when the evaluation succeeds.
+	 */
+	public EvalResult tryEval(String expr) {
+		Evaluator evaluator = evaluator();
+		EvalResult result = evaluator.tryEval(expr);
+		if (audit != null) {
+			audit.record(session, AuditLog.ENTRY_TRY_EVAL, expr, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Checks the syntax of an expression without evaluating it.
+	 * 
+	 * @return the first error found, null for a well-formed expression
+	 */
+	public Diagnostic validate(String expr) {
+		Evaluator evaluator = evaluator();
+		return evaluator.validate(expr);
+	}
+
+	/**
+	 * Estimates the cost of evaluating an expression without evaluating it,
+	 * see {@link CostEstimate}.
+	 *
+	 * @throws {@link LexicalException}
+	 * @throws {@link ParsingException}
+	 */
+	public CostEstimate estimate(String expr) {
+		if (expr.isEmpty()) {
+			throw new IllegalArgumentException("Cannot estimate the empty string");
+		}
+		return CostEstimate.of(evaluator().parse(expr));
+	}
+
+	/**
+	 * Parses an expression of the given variable once for repeated
+	 * evaluation. Other identifiers are resolved against the current
+	 * bindings, see {@link Evaluator#compile}.
+	 * <p>
+	 * Compiling is not submitted to the admission controller: it only parses,
+	 * and the evaluations of the returned expression run on behalf of the
+	 * caller. {@link #integrate} and {@link #solve} are.
+	 */
+	public CompiledExpression compile(String expr, String variable) {
 		Evaluator evaluator = new Evaluator(bindings);
-		return evaluator.eval(expr);
+		return evaluator.compile(expr, variable);
 	}
-	
+
+	/**
+	 * Integrates an expression of the given variable from {@code a} to
+	 * {@code b} with adaptive Simpson quadrature, see {@link Integrator}.
+	 * 
+	 * @throws calculator.admission.BudgetExceededException see
+	 *             {@link #sample}
+	 */
+	public IntegrationResult integrate(String expr, String variable, double a, double b) {
+		return audited(AuditLog.ENTRY_INTEGRATE, expr + " " + variable + " " + a + " " + b,
+				() -> sample(compile(expr, variable), f -> new Integrator().integrate(f, a, b)),
+				result -> result.value);
+	}
+
+	/**
+	 * Finds a root of an expression of the given variable between
+	 * {@code lo} and {@code hi} with Brent's method, see {@link RootFinder}.
+	 * 
+	 * @throws calculator.admission.BudgetExceededException see
+	 *             {@link #sample}
+	 */
+	public RootResult solve(String expr, String variable, double lo, double hi) {
+		return audited(AuditLog.ENTRY_SOLVE, expr + " " + variable + " " + lo + " " + hi,
+				() -> sample(compile(expr, variable), f -> new RootFinder().solve(f, lo, hi)),
+				result -> result.root);
+	}
+
+	/**
+	 * Removes the given variables, scalar or array, or every variable when
+	 * no name is given. Recorded by the audit log, if any, so that replays
+	 * see the same bindings.
+	 * 
+	 * @return the number of bindings removed
+	 */
+	public int clear(String... names) {
+		int removed = 0;
+		if (names.length == 0) {
+			removed = bindings.size() + arrays.size();
+			bindings.clear();
+			arrays.clear();
+		} else {
+			for (String name : names) {
+				if (bindings.remove(name) != null || arrays.remove(name) != null) {
+					removed++;
+				}
+			}
+		}
+		if (audit != null) {
+			audit.record(session, AuditLog.ENTRY_CLEAR, String.join(" ", names), removed);
+		}
+		return removed;
+	}
+
+	/**
+	 * Records the expressions evaluated by {@link #eval}, {@link #evalArray}
+	 * and {@link #tryEval} along with their outcome, as well as the calls to
+	 * {@link #clear}, {@link #integrate} and {@link #solve}, see
+	 * {@link AuditLog}.
+	 * 
+	 * @param audit null to stop recording
+	 * @param session identifies this calculator in the log
+	 */
+	public void audit(AuditLog audit, long session) {
+		this.audit = audit;
+		this.session = session;
+	}
+
+	/**
+	 * Submits the expressions evaluated by {@link #eval}, {@link #evalArray},
+	 * {@link #tryEval}, {@link #integrate} and {@link #solve} to an admission
+	 * controller, which may reject them or queue them, and limits their
+	 * evaluation, see {@link AdmissionController}. Rejections are reported as
+	 * {@link calculator.admission.BudgetExceededException}.
+	 * 
+	 * @param admission null to evaluate expressions without limits
+	 * @param tenant name under which capacity is taken and rejections
+	 *            counted, shared by all the calculators of the tenant
+	 */
+	public void admission(AdmissionController admission, String tenant) {
+		this.admission = admission;
+		this.tenant = tenant;
+	}
+
+	/**
+	 * Sets how large expressions are split across threads, see
+	 * {@link ParallelEvaluator}. By default, expressions of
+	 * {@link ParallelEvaluator#DEFAULT_SIZE_THRESHOLD} nodes or more are
+	 * evaluated on the common fork-join pool, without reassociation.
+	 * 
+	 * @param parallel null to evaluate every expression on the calling thread
+	 */
+	public void parallel(ParallelEvaluator parallel) {
+		this.parallel = parallel;
+	}
+
+	/**
+	 * Limits the number of elements of the arrays built by {@code range},
+	 * {@link Evaluator#DEFAULT_MAX_ARRAY_LENGTH} by default. Larger ranges
+	 * are rejected with an {@link EvaluationException}, with or without an
+	 * admission controller.
+	 */
+	public void maxArrayLength(int maxArrayLength) {
+		if (maxArrayLength < 0) {
+			throw new IllegalArgumentException("maxArrayLength must not be negative");
+		}
+		this.maxArrayLength = maxArrayLength;
+	}
+
 	public Map<String,Double> bindings() {
 		return bindings;
 	}
+
+	/**
+	 * array-valued bindings, a name is bound either here or in
+	 * {@link #bindings()}
+	 */
+	public Map<String,double[]> arrays() {
+		return arrays;
+	}
 	
-	private final Map<String,Double> bindings = new LinkedHashMap<>();
+	private final Map<String,Double> bindings;
+
+	private final Map<String,double[]> arrays = new LinkedHashMap<>();
+
+	private ParallelEvaluator parallel = new ParallelEvaluator();
+
+	private AuditLog audit = null;
+	private long session;
+
+	private AdmissionController admission = null;
+	private String tenant;
+
+	private int maxArrayLength = Evaluator.DEFAULT_MAX_ARRAY_LENGTH;
+
+	/**
+	 * Runs a numeric method on a compiled expression. With an admission
+	 * controller, the method is admitted at the cost of a single evaluation,
+	 * and every sample is charged that cost to the budget of the call, so
+	 * that the number of samples is bounded by the operation budget and
+	 * sampling stops at the deadline.
+	 */
+	private <T> T sample(CompiledExpression expression, Function<DoubleUnaryOperator, T> method) {
+		if (admission == null) {
+			return method.apply(expression::evaluate);
+		}
+		CostEstimate estimate = expression.estimate();
+		long cost = Math.max(estimate.cost, 1);
+		try (Ticket ticket = admission.admit(tenant, estimate)) {
+			Budget budget = ticket.budget;
+			return method.apply(x -> {
+				budget.charge(cost);
+				return expression.evaluate(x);
+			});
+		}
+	}
+
+	/**
+	 * Runs a numeric method, recording its value or failure in the audit
+	 * log, if any, under {@code command}.
+	 */
+	private <T> T audited(byte entry, String command, Supplier<T> method, ToDoubleFunction<T> value) {
+		if (audit == null) {
+			return method.get();
+		}
+		try {
+			T result = method.get();
+			audit.record(session, entry, command, value.applyAsDouble(result));
+			return result;
+		} catch (RuntimeException ex) {
+			audit.record(session, entry, command, ex);
+			throw ex;
+		}
+	}
+
+	private Evaluator evaluator() {
+		Evaluator evaluator = new Evaluator(bindings, arrays, parallel);
+		evaluator.maxArrayLength(maxArrayLength);
+		if (admission != null) {
+			evaluator.admission(admission, tenant);
+		}
+		return evaluator;
+	}
+
+	public Calculator() {
+		this(new LinkedHashMap<>());
+	}
+
+	/**
+	 * @param bindings variable store, see {@link PrimitiveBindings} for a
+	 *            compact store suited to millions of variables
+	 */
+	public Calculator(Map<String,Double> bindings) {
+		this.bindings = bindings;
+	}
 	
+	/**
+	 * Options:
+	 * <ul>
+	 * <li>{@code --audit file}: record every evaluation, {@code :clear},
+	 * {@code :integrate} and {@code :solve} command into the {@link AuditLog}
+	 * at {@code file}, see {@link calculator.audit.AuditReplay}. Not
+	 * supported with {@code --csv}.
+	 * <li>{@code --csv formula...}: transform the CSV read from the standard
+	 * input with the given formulas instead of reading expressions, see
+	 * {@link CsvTransformer}. Must come last.
+	 * </ul>
+	 */
 	public static void main(String[] args) throws IOException {
 		Calculator calc = new Calculator();
+		// results are written through a reusable buffer, see :format
+		DoubleFormatter formatter = new DoubleFormatter();
+		AuditLog audit = null;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--audit") && i + 1 < args.length) {
+				audit = new AuditLog(Paths.get(args[++i]));
+				calc.audit(audit, System.currentTimeMillis());
+			} else if (args[i].equals("--csv") && i + 1 < args.length) {
+				if (audit != null) {
+					audit.close();
+					System.err.println("*** ERROR: --audit does not record --csv transformations");
+					System.exit(2);
+				}
+				int status;
+				try (OutputStream out = new BufferedOutputStream(System.out, 1 << 16)) {
+					status = csv(Arrays.copyOfRange(args, i + 1, args.length), System.in, out, System.err);
+				}
+				if (status != 0) {
+					System.exit(status);
+				}
+				return;
+			} else {
+				System.err.println("usage: calculator.Calculator [--audit file] [--csv formula...]");
+				System.exit(2);
+			}
+		}
 		try (BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
 				PrintWriter out = new PrintWriter(System.out, true)) {
 			while (true) {
@@ -75,7 +421,15 @@ public class Calculator {
 				try {
 					if (!line.startsWith(":")) {
 						// handle expression
-						out.println(calc.eval(line));
+						EvalResult result = calc.tryEval(line);
+						if (result.isArray()) {
+							out.println(EvalResult.describe(result.array));
+						} else if (result.isSuccess()) {
+							formatter.format(result.value).writeTo(out);
+							out.println();
+						} else {
+							System.err.println("*** ERROR: " + result.diagnostic.message());
+						}
 					} else {
 						// handle command
 						String[] command = line.split("\\s+", 2);
@@ -83,16 +437,34 @@ public class Calculator {
 							case ":vars":
 								calc.bindings().forEach((name, value) ->
 										out.println(name + " = " + value));
+								calc.arrays().forEach((name, value) ->
+										out.println(name + " = " + EvalResult.describe(value)));
 								break;
 							case ":clear":
-								if (command.length == 1) {
-									// clear all
-									calc.bindings().clear();
-								} else {
-									// clear requested
-									calc.bindings().keySet().removeAll(Arrays.asList(command[1].split("\\s+")));
-								}
+								calc.clear(command.length == 1 ? new String[0] : command[1].split("\\s+"));
+								break;
+							case ":cost": {
+								String[] arguments = arguments(command, 1, ":cost expr");
+								out.println(calc.estimate(arguments[0]));
+								break;
+							}
+							case ":format": {
+								String[] arguments = command.length == 1 ? new String[0] : command[1].split("\\s+");
+								formatter = formatter(arguments);
 								break;
+							}
+							case ":integrate": {
+								String[] arguments = arguments(command, 4, ":integrate expr variable lower upper");
+								out.println(calc.integrate(arguments[0], arguments[1],
+										Double.parseDouble(arguments[2]), Double.parseDouble(arguments[3])));
+								break;
+							}
+							case ":solve": {
+								String[] arguments = arguments(command, 4, ":solve expr variable lower upper");
+								out.println(calc.solve(arguments[0], arguments[1],
+										Double.parseDouble(arguments[2]), Double.parseDouble(arguments[3])));
+								break;
+							}
 							case ":exit":
 							case ":quit":
 								System.exit(0);
@@ -105,6 +477,59 @@ public class Calculator {
 					System.err.println("*** ERROR: " + ex.getMessage());
 				}
 			}
+		} finally {
+			if (audit != null) {
+				audit.close();
+			}
+		}
+	}
+
+	/**
+	 * Transforms a CSV with the given formulas, see {@link CsvTransformer},
+	 * reporting unknown columns and malformed formulas like the REPL does.
+	 * 
+	 * @return the exit status
+	 */
+	static int csv(String[] formulas, InputStream in, OutputStream out, PrintStream err) throws IOException {
+		try {
+			new CsvTransformer(formulas).transform(in, out);
+			return 0;
+		} catch (RuntimeException ex) {
+			err.println("*** ERROR: " + ex.getMessage());
+			return 1;
+		}
+	}
+
+	/**
+	 * @param arguments {@code shortest}, {@code fixed digits} or
+	 *            {@code scientific digits}
+	 */
+	private static DoubleFormatter formatter(String[] arguments) {
+		String usage = "usage: :format shortest | fixed digits | scientific digits";
+		if (arguments.length == 1 && arguments[0].equals("shortest")) {
+			return new DoubleFormatter();
+		} else if (arguments.length != 2) {
+			throw new RuntimeException(usage);
+		}
+		int precision = Integer.parseInt(arguments[1]);
+		switch (arguments[0]) {
+			case "fixed":
+				return new DoubleFormatter(DoubleFormatter.Style.FIXED, precision);
+			case "scientific":
+				return new DoubleFormatter(DoubleFormatter.Style.SCIENTIFIC, precision);
+			default:
+				throw new RuntimeException(usage);
+		}
+	}
+
+	/**
+	 * Splits the arguments of a command, checking their count.
+	 */
+	private static String[] arguments(String[] command, int count, String usage) {
+		String[] arguments = command.length == 1 ? new String[0] : command[1].split("\\s+");
+		if (arguments.length != count) {
+			throw new RuntimeException("usage: " + usage);
 		}
+		return arguments;
 	}
 }
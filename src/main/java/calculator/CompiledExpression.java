@@ -0,0 +1,91 @@
+package calculator;
+
+import java.util.Map;
+
+import calculator.admission.CostEstimate;
+
+/**
+ * Expression of a single variable, parsed once and evaluated many times.
+ * <p>
+ * Identifiers other than the variable are resolved against the bindings
+ * when the expression is compiled, so evaluation touches neither the lexer
+ * nor the bindings map. The {@link SyntaxTree} produced by the
+ * {@link Parser} is evaluated by {@link Evaluator#step}, with a variable
+ * table and an operand stack kept per thread.
+ * <p>
+ * Instances are immutable and may be evaluated concurrently.
+ */
+public final class CompiledExpression {
+
+	/**
+	 * name of the free variable
+	 */
+	public final String variable;
+
+	private final SyntaxTree tree;
+	/**
+	 * value of each variable of the tree, the free one excepted
+	 */
+	private final double[] values;
+	/**
+	 * index of the free variable in the tree, -1 when it does not occur
+	 */
+	private final int index;
+
+	private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+	/**
+	 * Variable table and operand stack of a thread.
+	 */
+	private final class Scratch {
+		final double[] variables = values.clone();
+		final double[] stack = new double[tree.maxStackDepth()];
+	}
+
+	CompiledExpression(String variable, SyntaxTree tree, Map<String, Double> bindings) {
+		this.variable = variable;
+		this.tree = tree;
+		for (int i = 0; i < tree.size(); i++) {
+			byte op = tree.op(i);
+			if (op == SyntaxTree.ASSIGN) {
+				throw new EvaluationException("Assignments are not supported in compiled expressions",
+						tree.position(i));
+			} else if (op >= SyntaxTree.RANGE) {
+				throw new EvaluationException("Arrays are not supported in compiled expressions", tree.position(i));
+			}
+		}
+		this.values = new double[tree.variableCount()];
+		int index = -1;
+		for (int i = 0; i < values.length; i++) {
+			String name = tree.variable(i);
+			if (name.equals(variable)) {
+				index = i;
+			} else {
+				Double value = bindings.get(name);
+				if (value == null) {
+					throw Evaluator.unbound(tree, i);
+				}
+				values[i] = value;
+			}
+		}
+		this.index = index;
+	}
+
+	/**
+	 * Estimates the cost of a single evaluation, see {@link CostEstimate}.
+	 */
+	public CostEstimate estimate() {
+		return CostEstimate.of(tree);
+	}
+
+	/**
+	 * Evaluate the expression with the variable bound to {@code x}.
+	 */
+	public double evaluate(double x) {
+		Scratch scratch = this.scratch.get();
+		if (index >= 0) {
+			scratch.variables[index] = x;
+		}
+		return Evaluator.evaluate(tree, scratch.variables, scratch.stack);
+	}
+}
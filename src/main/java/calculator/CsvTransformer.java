@@ -0,0 +1,485 @@
+package calculator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import calculator.format.DoubleFormatter;
+
+/**
+ * Streams a CSV file through a fixed set of formulas, writing one output
+ * column per formula.
+ * <p>
+ * The header row names the input columns, which formulas read as
+ * variables. A formula {@code name=expr} produces the column {@code name},
+ * a formula without assignment is named after its text. Formulas may read
+ * the outputs of the formulas before them.
+ * <p>
+ * Formulas are parsed once. The input is read in chunks of whole lines,
+ * processed by a pool of threads and written back in input order, with a
+ * bounded number of chunks in flight. Workers split fields and parse the
+ * referenced numeric columns straight from the bytes, evaluate the trees
+ * over a reused value array and format the results into a reused buffer:
+ * no object is allocated per row, except by formulas building arrays, such
+ * as {@code sum([a,b,c])}. Formulas must evaluate to a scalar.
+ * <p>
+ * Fields are separated by commas and may be surrounded by double quotes,
+ * quoted fields cannot contain commas or line breaks. Empty or non-numeric
+ * fields read as NaN, blank lines are skipped.
+ */
+public class CsvTransformer {
+
+	public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+	/**
+	 * largest double whose integers are all exact, see
+	 * {@link #parseDouble(byte[], int, int)}
+	 */
+	private static final long EXACT_LIMIT = 1L << 53;
+	private static final double[] POW10 = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12,
+			1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	private final SyntaxTree[] trees;
+	private final String[] names;
+	private final int threads;
+	private final int chunkSize;
+
+	// resolved from the header
+	private int columns;
+	/**
+	 * whether a formula reads the column, other columns are not parsed
+	 */
+	private boolean[] referenced;
+	/**
+	 * index of each variable of each formula in the row values, input
+	 * columns followed by the formula outputs
+	 */
+	private int[][] slots;
+
+	public CsvTransformer(String... formulas) {
+		this(formulas, Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * @throws {@link LexicalException}
+	 * @throws {@link ParsingException}
+	 * @throws IllegalArgumentException for empty formulas or array-valued
+	 *             formulas
+	 */
+	public CsvTransformer(String[] formulas, int threads, int chunkSize) {
+		if (formulas.length == 0 || threads < 1 || chunkSize < 1) {
+			throw new IllegalArgumentException("formulas, threads and chunk size must not be empty");
+		}
+		this.trees = new SyntaxTree[formulas.length];
+		this.names = new String[formulas.length];
+		this.threads = threads;
+		this.chunkSize = chunkSize;
+		Evaluator evaluator = new Evaluator(new LinkedHashMap<>());
+		for (int i = 0; i < formulas.length; i++) {
+			if (formulas[i].isEmpty()) {
+				throw new IllegalArgumentException("Cannot evaluate the empty string");
+			}
+			trees[i] = evaluator.parse(formulas[i]);
+			if (trees[i].isArrayValued()) {
+				throw new IllegalArgumentException("Array-valued formulas are not supported in CSV: " + formulas[i]);
+			}
+			// targets are stored innermost first
+			String[] targets = trees[i].targets();
+			names[i] = targets.length > 0 ? targets[targets.length - 1] : formulas[i];
+		}
+	}
+
+	/**
+	 * Bind the formula variables to the header columns.
+	 */
+	private void resolve(String[] header) {
+		columns = header.length;
+		referenced = new boolean[columns];
+		slots = new int[trees.length][];
+		for (int f = 0; f < trees.length; f++) {
+			slots[f] = new int[trees[f].variableCount()];
+			for (int v = 0; v < slots[f].length; v++) {
+				slots[f][v] = slot(trees[f].variable(v), f, header);
+			}
+		}
+	}
+
+	private int slot(String variable, int formula, String[] header) {
+		// the latest formula output shadows input columns
+		for (int f = formula - 1; f >= 0; f--) {
+			if (names[f].equals(variable)) {
+				return columns + f;
+			}
+		}
+		for (int c = 0; c < header.length; c++) {
+			if (header[c].equals(variable)) {
+				referenced[c] = true;
+				return c;
+			}
+		}
+		throw new IllegalArgumentException("Unknown column: " + variable);
+	}
+
+	/**
+	 * Transform the CSV read from {@code in}, header included, into
+	 * {@code out}. Streams are not closed.
+	 *
+	 * @return number of data rows
+	 * @throws IllegalArgumentException when a formula reads an unknown
+	 *             column
+	 */
+	public long transform(InputStream in, OutputStream out) throws IOException {
+		ChunkReader reader = new ChunkReader(in);
+		Chunk chunk = reader.next();
+		if (chunk == null) {
+			return 0;
+		}
+		int headerEnd = chunk.from;
+		while (headerEnd < chunk.to && chunk.data[headerEnd] != '\n') {
+			headerEnd++;
+		}
+		resolve(header(chunk.data, chunk.from, headerEnd));
+		chunk = new Chunk(chunk.data, Math.min(headerEnd + 1, chunk.to), chunk.to);
+
+		StringBuilder header = new StringBuilder();
+		for (int f = 0; f < names.length; f++) {
+			header.append(f == 0 ? "" : ",");
+			if (names[f].indexOf(',') >= 0) {
+				// expressions hold no double quotes
+				header.append('"').append(names[f]).append('"');
+			} else {
+				header.append(names[f]);
+			}
+		}
+		out.write(header.append('\n').toString().getBytes(StandardCharsets.UTF_8));
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "csv-worker");
+			thread.setDaemon(true);
+			return thread;
+		});
+		ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+		// chunks in flight, in input order
+		ArrayDeque<Future<Output>> pending = new ArrayDeque<>();
+		long rows = 0;
+		try {
+			for (; chunk != null; chunk = reader.next()) {
+				if (pending.size() == 2 * threads) {
+					rows += write(pending.poll(), out);
+				}
+				Chunk task = chunk;
+				pending.add(pool.submit(() -> workers.get().process(task)));
+			}
+			while (!pending.isEmpty()) {
+				rows += write(pending.poll(), out);
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		out.flush();
+		return rows;
+	}
+
+	private static long write(Future<Output> future, OutputStream out) throws IOException {
+		try {
+			Output output = future.get();
+			out.write(output.data, 0, output.length);
+			return output.rows;
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (ExecutionException ex) {
+			throw new IOException(ex.getCause());
+		}
+	}
+
+	private static String[] header(byte[] data, int from, int to) {
+		String line = new String(data, from, to - from, StandardCharsets.UTF_8);
+		String[] header = line.endsWith("\r") ? line.substring(0, line.length() - 1).split(",", -1)
+				: line.split(",", -1);
+		for (int i = 0; i < header.length; i++) {
+			String name = header[i].trim();
+			if (name.length() >= 2 && name.startsWith("\"") && name.endsWith("\"")) {
+				name = name.substring(1, name.length() - 1);
+			}
+			header[i] = name;
+		}
+		return header;
+	}
+
+	/**
+	 * Whole lines of input, {@code data[from]} to {@code data[to - 1]}.
+	 */
+	private static class Chunk {
+		final byte[] data;
+		final int from;
+		final int to;
+
+		Chunk(byte[] data, int from, int to) {
+			this.data = data;
+			this.from = from;
+			this.to = to;
+		}
+	}
+
+	private static class Output {
+		final byte[] data;
+		final int length;
+		final long rows;
+
+		Output(byte[] data, int length, long rows) {
+			this.data = data;
+			this.length = length;
+			this.rows = rows;
+		}
+	}
+
+	/**
+	 * Splits the input into chunks of about the chunk size, ending on a line
+	 * break. Lines longer than a chunk get a chunk of their own.
+	 */
+	private class ChunkReader {
+		private final InputStream in;
+		/**
+		 * start of the next line, read along with the previous chunk
+		 */
+		private byte[] carry = new byte[0];
+		private boolean eof = false;
+
+		ChunkReader(InputStream in) {
+			this.in = in;
+		}
+
+		Chunk next() throws IOException {
+			if (eof && carry.length == 0) {
+				return null;
+			}
+			byte[] data = Arrays.copyOf(carry, Math.max(chunkSize, carry.length * 2));
+			int length = carry.length;
+			int scanned = 0;
+			while (true) {
+				while (!eof && length < data.length) {
+					int read = in.read(data, length, data.length - length);
+					if (read < 0) {
+						eof = true;
+					} else {
+						length += read;
+					}
+				}
+				int end = length;
+				while (end > scanned && data[end - 1] != '\n') {
+					end--;
+				}
+				if (end > scanned || eof) {
+					if (end == scanned) {
+						// last line without line break
+						end = length;
+					}
+					carry = Arrays.copyOfRange(data, end, length);
+					return end == 0 ? null : new Chunk(data, 0, end);
+				}
+				// no line break yet
+				scanned = length;
+				data = Arrays.copyOf(data, data.length * 2);
+			}
+		}
+	}
+
+	/**
+	 * Per-thread state reused across chunks.
+	 */
+	private class Worker {
+		/**
+		 * input columns followed by the formula outputs
+		 */
+		final double[] values = new double[columns + trees.length];
+		final double[][] variables = new double[trees.length][];
+		final double[][] stacks = new double[trees.length][];
+		/**
+		 * boxed variables of the formulas building arrays, null for the
+		 * others
+		 */
+		final Object[][] boxed = new Object[trees.length][];
+		final DoubleFormatter formatter = new DoubleFormatter();
+
+		Worker() {
+			for (int f = 0; f < trees.length; f++) {
+				variables[f] = new double[slots[f].length];
+				stacks[f] = new double[trees[f].maxStackDepth()];
+				if (trees[f].hasArrays()) {
+					boxed[f] = new Object[slots[f].length];
+				}
+			}
+		}
+
+		private double evaluate(int f) {
+			if (boxed[f] == null) {
+				return Evaluator.evaluate(trees[f], variables[f], stacks[f]);
+			}
+			for (int v = 0; v < boxed[f].length; v++) {
+				boxed[f][v] = variables[f][v];
+			}
+			return (Double) Evaluator.evaluateArrays(trees[f], boxed[f], null, Evaluator.DEFAULT_MAX_ARRAY_LENGTH);
+		}
+
+		Output process(Chunk chunk) {
+			byte[] data = chunk.data;
+			byte[] out = new byte[Math.max(64, chunk.to - chunk.from)];
+			int length = 0;
+			long rows = 0;
+			int start = chunk.from;
+			while (start < chunk.to) {
+				int end = start;
+				while (end < chunk.to && data[end] != '\n') {
+					end++;
+				}
+				int next = end + 1;
+				if (end > start && data[end - 1] == '\r') {
+					end--;
+				}
+				if (end > start) {
+					parseRow(data, start, end);
+					for (int f = 0; f < trees.length; f++) {
+						int[] slot = slots[f];
+						double[] vars = variables[f];
+						for (int v = 0; v < slot.length; v++) {
+							vars[v] = values[slot[v]];
+						}
+						double value = evaluate(f);
+						values[columns + f] = value;
+
+						formatter.format(value);
+						if (length + formatter.length() + 1 > out.length) {
+							out = Arrays.copyOf(out, Math.max(out.length * 2, length + formatter.length() + 1));
+						}
+						if (f > 0) {
+							out[length++] = ',';
+						}
+						char[] chars = formatter.buffer();
+						for (int i = 0; i < formatter.length(); i++) {
+							out[length++] = (byte) chars[i];
+						}
+					}
+					if (length == out.length) {
+						out = Arrays.copyOf(out, out.length * 2);
+					}
+					out[length++] = '\n';
+					rows++;
+				}
+				start = next;
+			}
+			return new Output(out, length, rows);
+		}
+
+		private void parseRow(byte[] data, int from, int to) {
+			int column = 0;
+			int start = from;
+			for (int i = from; i <= to && column < columns; i++) {
+				if (i == to || data[i] == ',') {
+					if (referenced[column]) {
+						values[column] = parseDouble(data, start, i);
+					}
+					column++;
+					start = i + 1;
+				}
+			}
+			for (; column < columns; column++) {
+				values[column] = Double.NaN;
+			}
+		}
+	}
+
+	/**
+	 * Parse a decimal number without allocating in the common case: up to 15
+	 * significant digits scaled by at most 10^22 are computed exactly with
+	 * one double operation, as in Clinger's fast path. Other numbers go
+	 * through {@link Double#parseDouble}.
+	 *
+	 * @return NaN for empty or non-numeric fields
+	 */
+	static double parseDouble(byte[] data, int from, int to) {
+		// trim spaces and quotes
+		while (from < to && (data[from] == ' ' || data[from] == '"')) {
+			from++;
+		}
+		while (to > from && (data[to - 1] == ' ' || data[to - 1] == '"')) {
+			to--;
+		}
+		if (from == to) {
+			return Double.NaN;
+		}
+		int i = from;
+		boolean negative = data[i] == '-';
+		if (negative || data[i] == '+') {
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int scale = 0;
+		boolean point = false;
+		boolean any = false;
+		for (; i < to; i++) {
+			byte b = data[i];
+			if (b >= '0' && b <= '9') {
+				any = true;
+				if (mantissa != 0 || b != '0') {
+					if (digits < 18) {
+						mantissa = mantissa * 10 + (b - '0');
+						digits++;
+						if (point) {
+							scale--;
+						}
+					} else {
+						// precision beyond the fast path
+						digits++;
+						if (!point) {
+							scale++;
+						}
+					}
+				} else if (point) {
+					scale--;
+				}
+			} else if (b == '.' && !point) {
+				point = true;
+			} else {
+				break;
+			}
+		}
+		if (i < to && any && (data[i] == 'e' || data[i] == 'E')) {
+			int j = i + 1;
+			boolean negativeExponent = j < to && data[j] == '-';
+			if (j < to && (data[j] == '-' || data[j] == '+')) {
+				j++;
+			}
+			int exponent = 0;
+			int start = j;
+			for (; j < to && data[j] >= '0' && data[j] <= '9'; j++) {
+				if (exponent < 100000) {
+					exponent = exponent * 10 + (data[j] - '0');
+				}
+			}
+			if (j > start) {
+				scale += negativeExponent ? -exponent : exponent;
+				i = j;
+			}
+		}
+		if (i == to && any && digits <= 15 && mantissa < EXACT_LIMIT && scale >= -22 && scale <= 22) {
+			double value = scale < 0 ? mantissa / POW10[-scale] : mantissa * POW10[scale];
+			return negative ? -value : value;
+		}
+		try {
+			return Double.parseDouble(new String(data, from, to - from, StandardCharsets.ISO_8859_1));
+		} catch (NumberFormatException ex) {
+			return Double.NaN;
+		}
+	}
+}
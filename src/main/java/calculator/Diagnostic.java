@@ -0,0 +1,66 @@
+package calculator;
+
+import java.util.Collections;
+import java.util.Set;
+
+import calculator.token.TokenKind;
+
+/**
+ * Description of why an expression was rejected, returned by
+ * {@link Calculator#validate} and {@link Calculator#tryEval} instead of
+ * throwing.
+ */
+public class Diagnostic {
+
+	public static enum Kind { EMPTY_INPUT, LEXICAL, PARSING, EVALUATION }
+
+	static final Diagnostic EMPTY_INPUT = new Diagnostic(Kind.EMPTY_INPUT, 0, Parser.OPERAND,
+			"Cannot evaluate the empty string", null);
+
+	public final Kind kind;
+	/**
+	 * input index where the error was detected, -1 when unknown
+	 */
+	public final int position;
+	/**
+	 * token kinds that would have been accepted at {@link #position}, empty
+	 * for lexical and evaluation errors
+	 */
+	public final Set<TokenKind> expected;
+
+	private final String message;
+	/**
+	 * rejection cause, kept to format the message on demand only
+	 */
+	private final RuntimeException cause;
+
+	private Diagnostic(Kind kind, int position, Set<TokenKind> expected, String message, RuntimeException cause) {
+		this.kind = kind;
+		this.position = position;
+		this.expected = expected;
+		this.message = message;
+		this.cause = cause;
+	}
+
+	Diagnostic(LexicalException ex) {
+		this(Kind.LEXICAL, ex.position, Collections.<TokenKind> emptySet(), null, ex);
+	}
+
+	Diagnostic(ParsingException ex) {
+		this(Kind.PARSING, ex.position, ex.expected, null, ex);
+	}
+
+	Diagnostic(EvaluationException ex) {
+		this(Kind.EVALUATION, ex.position, Collections.<TokenKind> emptySet(), null, ex);
+	}
+
+	public String message() {
+		return message != null ? message : cause.getMessage();
+	}
+
+	@Override
+	public String toString() {
+		return "Diagnostic [kind=" + kind + ", position=" + position + ", expected=" + expected + ", message="
+				+ message() + "]";
+	}
+}
@@ -0,0 +1,76 @@
+package calculator;
+
+import calculator.format.DoubleFormatter;
+
+/**
+ * Either the value of an expression or the {@link Diagnostic} explaining
+ * why it was rejected, see {@link Calculator#tryEval}.
+ */
+public class EvalResult {
+
+	/**
+	 * value of a scalar expression, NaN when rejected or array-valued
+	 */
+	public final double value;
+	/**
+	 * value of an array-valued expression, null otherwise
+	 */
+	public final double[] array;
+	/**
+	 * null when the expression was evaluated
+	 */
+	public final Diagnostic diagnostic;
+
+	EvalResult(double value) {
+		this.value = value;
+		this.array = null;
+		this.diagnostic = null;
+	}
+
+	EvalResult(double[] array) {
+		this.value = Double.NaN;
+		this.array = array;
+		this.diagnostic = null;
+	}
+
+	EvalResult(Diagnostic diagnostic) {
+		this.value = Double.NaN;
+		this.array = null;
+		this.diagnostic = diagnostic;
+	}
+
+	public boolean isSuccess() {
+		return diagnostic == null;
+	}
+
+	public boolean isArray() {
+		return array != null;
+	}
+
+	@Override
+	public String toString() {
+		if (!isSuccess()) {
+			return diagnostic.toString();
+		}
+		return isArray() ? describe(array) : String.valueOf(value);
+	}
+
+	/**
+	 * @return the first elements of {@code array} and its length
+	 */
+	public static String describe(double[] array) {
+		StringBuilder builder = new StringBuilder("[");
+		DoubleFormatter formatter = new DoubleFormatter();
+		int shown = Math.min(array.length, 10);
+		for (int i = 0; i < shown; i++) {
+			if (i > 0) {
+				builder.append(", ");
+			}
+			formatter.format(array[i]).appendTo(builder);
+		}
+		if (shown < array.length) {
+			builder.append(", ...");
+		}
+		return builder.append("] (").append(array.length).append(" elements)").toString();
+	}
+}
@@ -0,0 +1,26 @@
+package calculator;
+
+/**
+ * Thrown when a well-formed expression cannot be evaluated, e.g. because it
+ * references an unbound variable.
+ * <p>
+ * Stack traces are not collected, so rejecting invalid input stays cheap.
+ */
+public class EvaluationException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * input index of the offending token, -1 when unknown
+	 */
+	public final int position;
+
+	public EvaluationException(String message) {
+		this(message, -1);
+	}
+
+	public EvaluationException(String message, int position) {
+		super(message, null, false, false);
+		this.position = position;
+	}
+}
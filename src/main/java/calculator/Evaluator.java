@@ -1,17 +1,14 @@
 package calculator;
 
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Stack;
 
-import calculator.token.Function;
-import calculator.token.Identifier;
-import calculator.token.SpecialCharacter;
+import calculator.admission.AdmissionController;
+import calculator.admission.AdmissionController.Ticket;
+import calculator.admission.Budget;
+import calculator.admission.CostEstimate;
 import calculator.token.Token;
-import calculator.token.Decimal;
-import calculator.token.Operator;
 
 /**
  * Evaluates a mathematical expression.
@@ -20,215 +17,510 @@ import calculator.token.Operator;
  * <p>
  * Lexical analysis done by the {@link Tokenizer}.
  * <p>
- * Parsing done in {@link #shuntTokens(Iterator)}.
+ * Parsing done by the {@link Parser}.
  * <p>
- * Final evaluaton done in {@link #evaluateRPN(Iterator)}.
+ * Final evaluaton done in {@link #evaluate(SyntaxTree, double[])}, or in
+ * {@link #evaluateArrays(SyntaxTree, Budget)} when arrays are involved.
  *
  */
 public class Evaluator {
+
+	/**
+	 * default element limit of the arrays built by {@code range}, 32 MB of
+	 * doubles
+	 */
+	public static final int DEFAULT_MAX_ARRAY_LENGTH = 1 << 22;
+
 	private Map<String, Double> bindings;
+	/**
+	 * array-valued variables, sharing the namespace of the scalar bindings
+	 */
+	private Map<String, double[]> arrays;
+	/**
+	 * evaluator of large scalar trees, null to evaluate all trees
+	 * sequentially
+	 */
+	private ParallelEvaluator parallel;
+	/**
+	 * admits expressions after parsing, null to evaluate them all
+	 */
+	private AdmissionController admission = null;
+	private String tenant;
+	private int maxArrayLength = DEFAULT_MAX_ARRAY_LENGTH;
 
 	public Evaluator(Map<String, Double> bindings) {
+		this(bindings, new LinkedHashMap<>());
+	}
+
+	public Evaluator(Map<String, Double> bindings, Map<String, double[]> arrays) {
+		this(bindings, arrays, null);
+	}
+
+	public Evaluator(Map<String, Double> bindings, Map<String, double[]> arrays, ParallelEvaluator parallel) {
 		super();
 		this.bindings = bindings;
+		this.arrays = arrays;
+		this.parallel = parallel;
+	}
+
+	/**
+	 * Submit every expression to an admission controller after parsing.
+	 *
+	 * @param admission null to evaluate expressions without limits
+	 */
+	public void admission(AdmissionController admission, String tenant) {
+		this.admission = admission;
+		this.tenant = tenant;
 	}
 
+	/**
+	 * Limit the number of elements of the arrays built by {@code range},
+	 * larger ranges are rejected with an {@link EvaluationException} before
+	 * allocation.
+	 */
+	public void maxArrayLength(int maxArrayLength) {
+		if (maxArrayLength < 0) {
+			throw new IllegalArgumentException("maxArrayLength must not be negative");
+		}
+		this.maxArrayLength = maxArrayLength;
+	}
+
+	/**
+	 * type of value an entry point accepts
+	 */
+	private static enum ResultType { SCALAR, ARRAY, ANY }
+
 	/**
 	 * Evaluation entry point
 	 * @return evaluation result
 	 * 
 	 * @throws {@link LexicalException}
 	 * @throws {@link ParsingException}
+	 * @throws {@link EvaluationException}
 	 */
 	public Double eval(String expr) {
+		return (Double) evaluate(expr, ResultType.SCALAR);
+	}
+
+	/**
+	 * Evaluation entry point for array-valued expressions
+	 * @return evaluation result
+	 * 
+	 * @throws {@link LexicalException}
+	 * @throws {@link ParsingException}
+	 * @throws {@link EvaluationException}
+	 */
+	public double[] evalArray(String expr) {
+		return (double[]) evaluate(expr, ResultType.ARRAY);
+	}
+
+	/**
+	 * @return a {@code Double} or a {@code double[]}
+	 */
+	private Object evaluate(String expr, ResultType type) {
 		if (expr.isEmpty()){
 			throw new IllegalArgumentException("Cannot evaluate the empty string");
 		}
 		
-		Tokenizer tokenizer = new Tokenizer(expr);
-		List<Token> tokens = tokenizer.analyze();
-		Iterator<Token> tokenIterator = tokens.iterator();
-		
-		//variable assignment manual parsing
-		String assignedVariable = null;
-		if (tokens.size() >= 3 && tokens.get(1) == SpecialCharacter.BINDING){
-			if (!(tokens.get(0) instanceof Identifier)){
-				throw new ParsingException("The left side of the assignment character must be an indentifier");
+		SyntaxTree tree = parse(expr);
+		Object value;
+		if (admission == null) {
+			value = evaluate(tree, (Budget) null);
+		} else {
+			try (Ticket ticket = admission.admit(tenant, CostEstimate.of(tree))) {
+				value = evaluate(tree, ticket.budget);
 			}
-			assignedVariable = tokenIterator.next().lexeme;
-			tokenIterator.next();
 		}
-
-		// reverse polish notation aka postfix notation
-		List<Token> postfixExpression = shuntTokens(tokenIterator);
-		Double value = evaluateRPN(postfixExpression.iterator());
+		if (type == ResultType.SCALAR && value instanceof double[]) {
+			throw new EvaluationException("The expression evaluates to an array");
+		} else if (type == ResultType.ARRAY && value instanceof Double) {
+			throw new EvaluationException("The expression evaluates to a scalar");
+		}
 		
-		if (assignedVariable != null){
-			bindings.put(assignedVariable, value);
-		} 
-		bindings.put("_", value);
+		for (String target : tree.targets()) {
+			bind(target, value);
+		}
+		bind("_", value);
 		
 		return value;
 	}
 
+	private void bind(String name, Object value) {
+		if (value instanceof Double) {
+			bindings.put(name, (Double) value);
+			if (!arrays.isEmpty()) {
+				arrays.remove(name);
+			}
+		} else {
+			arrays.put(name, (double[]) value);
+			bindings.remove(name);
+		}
+	}
+
 	/**
-	 * Shunting-yard algorithm --
-	 * https://en.wikipedia.org/wiki/Shunting-yard_algorithm
-	 * <p>
-	 * Rearrange infix mathematical expression into a Reverse Polish Notation.
-	 * <p>
-	 * Iterate through tokens.
-	 * <ul>
-	 * <li>If the token is a number, then push it to the output queue.
-	 * <li>If the token is a function token, then push it onto the stack.
-	 * <li>If the token is an operator, o1: while there is an operator token o2,
-	 * at the top of the operator stack and its precedence is less than or equal
-	 * to that of o2, pop o2 off the operator stack, onto the output queue; at
-	 * the end of iteration push o1 onto the operator stack.
-	 * <li>If the token is a left parenthesis (i.e. "("), then push it onto the
-	 * stack.
-	 * <li>If the token is a right parenthesis (i.e. ")"): until the token at
-	 * the top of the stack is a left parenthesis, pop operators off the stack
-	 * onto the output queue. Pop the left parenthesis from the stack, but not
-	 * onto the output queue, if the next token at the top of the stack is a function
-	 * token, pop it onto the output queue. If the stack runs out without
-	 * finding a left parenthesis, then there are mismatched parentheses.
-	 * </ul>
-	 * <p>
-	 * When there are no more tokens to read and while there are still operator
-	 * tokens in the stack: if the operator token on the top of the stack is a
-	 * parenthesis, then there are mismatched parentheses, otherwise pop the
-	 * operator onto the output queue.
+	 * Non-throwing evaluation entry point, bindings are updated on success
+	 * only.
+	 */
+	public EvalResult tryEval(String expr) {
+		if (expr.isEmpty()) {
+			return new EvalResult(Diagnostic.EMPTY_INPUT);
+		}
+		try {
+			Object value = evaluate(expr, ResultType.ANY);
+			if (value instanceof Double) {
+				return new EvalResult((Double) value);
+			}
+			return new EvalResult((double[]) value);
+		} catch (LexicalException ex) {
+			return new EvalResult(new Diagnostic(ex));
+		} catch (ParsingException ex) {
+			return new EvalResult(new Diagnostic(ex));
+		} catch (EvaluationException ex) {
+			return new EvalResult(new Diagnostic(ex));
+		}
+	}
+
+	/**
+	 * Check the syntax of an expression without evaluating it.
 	 * 
+	 * @return the first error found, null for a well-formed expression
 	 */
-	private List<Token> shuntTokens(Iterator<Token> tokens) {
-		List<Token> rpnTokens = new LinkedList<>();
-		Stack<Token> stack = new Stack<>();
-		ParsingState state = ParsingState.EXPECT_OPERAND;
-		while (tokens.hasNext()) {
-			Token token = tokens.next();
-			if (token == SpecialCharacter.BINDING){
-				throw new ParsingException("The \"=\" character is not supported by the shunt-yard algorithm");
-			} else if (token instanceof Decimal || token instanceof Identifier) {
-				checkState(ParsingState.EXPECT_OPERAND, state);
-				rpnTokens.add(token);
-				state = ParsingState.EXPECT_OPERATOR;
-			} else if (token instanceof Function) {
-				checkState(ParsingState.EXPECT_OPERAND, state);
-				stack.push(token);
-			} else if (token instanceof Operator) {
-				checkState(ParsingState.EXPECT_OPERATOR, state);
-				while (!stack.empty() && stack.peek() instanceof Operator
-						&& ((Operator) token).precedence <= ((Operator) stack.peek()).precedence) {
-					rpnTokens.add(stack.pop());
-				}
-				stack.push(token);
-				state = ParsingState.EXPECT_OPERAND;
-			} else if (token == SpecialCharacter.LEFT_PAREN) {
-				checkState(ParsingState.EXPECT_OPERAND, state);
-				stack.push(token);
-			} else if (token == SpecialCharacter.RIGHT_PAREN) {
-				checkState(ParsingState.EXPECT_OPERATOR, state);
-				while (true) {
-					if (stack.empty()) {
-						throw new ParsingException("Mismatched parenthesis");
-					} else if (stack.peek() == SpecialCharacter.LEFT_PAREN) {
-						stack.pop();
-						if(!stack.empty() && stack.peek() instanceof Function){
-							rpnTokens.add(stack.pop());
-						}
-						break;
-					} else {
-						rpnTokens.add(stack.pop());
-					}
+	public Diagnostic validate(String expr) {
+		if (expr.isEmpty()) {
+			return Diagnostic.EMPTY_INPUT;
+		}
+		try {
+			parse(expr);
+			return null;
+		} catch (LexicalException ex) {
+			return new Diagnostic(ex);
+		} catch (ParsingException ex) {
+			return new Diagnostic(ex);
+		}
+	}
+
+	/**
+	 * Parse an expression of the given variable once, for repeated evaluation.
+	 * Other identifiers are resolved against the current bindings.
+	 *
+	 * @throws {@link LexicalException}
+	 * @throws {@link ParsingException}
+	 * @throws {@link EvaluationException}
+	 */
+	public CompiledExpression compile(String expr, String variable) {
+		if (expr.isEmpty()){
+			throw new IllegalArgumentException("Cannot compile the empty string");
+		}
+		return new CompiledExpression(variable, parse(expr), bindings);
+	}
+
+	/**
+	 * @throws {@link LexicalException}
+	 * @throws {@link ParsingException}
+	 */
+	SyntaxTree parse(String expr) {
+		Tokenizer tokenizer = new Tokenizer(expr);
+		List<Token> tokens = tokenizer.analyze();
+		return new Parser(tokenizer, tokens).parse();
+	}
+
+	/**
+	 * @param budget null for no limits
+	 * @return a {@code Double} or a {@code double[]}
+	 */
+	private Object evaluate(SyntaxTree tree, Budget budget) {
+		if (!isScalar(tree)) {
+			return evaluateArrays(tree, budget);
+		}
+		double[] variables = resolve(tree);
+		if (budget == null) {
+			return parallel != null ? parallel.evaluate(tree, variables) : evaluate(tree, variables);
+		}
+		// the cost of a scalar tree is known, only the deadline is checked
+		// during evaluation
+		budget.charge(tree.cost(tree.root()));
+		return parallel != null ? parallel.evaluate(tree, variables, budget) : evaluate(tree, variables, budget);
+	}
+
+	/**
+	 * @return false when the tree involves array literals, array functions
+	 *         or array-valued variables
+	 */
+	private boolean isScalar(SyntaxTree tree) {
+		if (tree.hasArrays()) {
+			return false;
+		} else if (!arrays.isEmpty()) {
+			for (int i = 0; i < tree.variableCount(); i++) {
+				if (arrays.containsKey(tree.variable(i))) {
+					return false;
 				}
-			} else {
-				assert false : "all cases should be covered";
 			}
 		}
+		return true;
+	}
+
+	/**
+	 * @return the value of each variable of the tree, indexed like
+	 *         {@link SyntaxTree#variables()}
+	 */
+	private double[] resolve(SyntaxTree tree) {
+		double[] values = new double[tree.variableCount()];
+		for (int i = 0; i < values.length; i++) {
+			Double value = bindings.get(tree.variable(i));
+			if (value == null) {
+				throw unbound(tree, i);
+			}
+			values[i] = value;
+		}
+		return values;
+	}
+
+	/**
+	 * @return the error reported at the first occurrence of the variable
+	 */
+	static EvaluationException unbound(SyntaxTree tree, int variable) {
+		int position = -1;
+		for (int node = 0; node < tree.size(); node++) {
+			if (tree.op(node) == SyntaxTree.VARIABLE && tree.arg(node) == variable) {
+				position = tree.position(node);
+				break;
+			}
+		}
+		return new EvaluationException("Unbound variable: " + tree.variable(variable), position);
+	}
+
+	/**
+	 * Evaluate a scalar tree, running through its nodes in postorder with an
+	 * operand stack.
+	 * 
+	 * @param variables value of each variable of the tree
+	 */
+	static double evaluate(SyntaxTree tree, double[] variables) {
+		return evaluate(tree, variables, new double[tree.maxStackDepth()]);
+	}
+
+	/**
+	 * @param stack operand stack of at least {@link SyntaxTree#maxStackDepth()}
+	 *            values, reused across calls
+	 */
+	static double evaluate(SyntaxTree tree, double[] variables, double[] stack) {
+		return evaluate(tree, variables, stack, tree.start(tree.root()), tree.root());
+	}
+
+	/**
+	 * Evaluate the subtree made of nodes {@code from} to {@code to}, the
+	 * latter being its root.
+	 */
+	static double evaluate(SyntaxTree tree, double[] variables, double[] stack, int from, int to) {
+		int top = -1;
+		for (int i = from; i <= to; i++) {
+			top = step(tree, i, variables, stack, top);
+		}
+		return stack[0];
+	}
+
+	/**
+	 * Evaluate a scalar tree, checking the deadline of the budget every
+	 * {@link Budget#CHECK_INTERVAL} nodes. Operations are not charged.
+	 */
+	static double evaluate(SyntaxTree tree, double[] variables, Budget budget) {
+		double[] stack = new double[tree.maxStackDepth()];
+		int top = -1;
+		int root = tree.root();
+		for (int from = tree.start(root); from <= root; from += Budget.CHECK_INTERVAL) {
+			budget.checkDeadline();
+			int to = Math.min(root, from + Budget.CHECK_INTERVAL - 1);
+			for (int i = from; i <= to; i++) {
+				top = step(tree, i, variables, stack, top);
+			}
+		}
+		return stack[0];
+	}
 
-		while (!stack.isEmpty()) {
-			if (stack.peek() == SpecialCharacter.LEFT_PAREN) {
-				throw new ParsingException("Mismatched parenthesis");
+	/**
+	 * Apply {@code node} to the operand stack.
+	 *
+	 * @param top index of the top of the stack, -1 when empty
+	 * @return the new top index
+	 */
+	static int step(SyntaxTree tree, int node, double[] variables, double[] stack, int top) {
+		switch (tree.op(node)) {
+		case SyntaxTree.CONSTANT:
+			stack[++top] = tree.constant(tree.arg(node));
+			break;
+		case SyntaxTree.VARIABLE:
+			stack[++top] = variables[tree.arg(node)];
+			break;
+		case SyntaxTree.ADD:
+			top--;
+			stack[top] = stack[top] + stack[top + 1];
+			break;
+		case SyntaxTree.SUB:
+			top--;
+			stack[top] = stack[top] - stack[top + 1];
+			break;
+		case SyntaxTree.MUL:
+			top--;
+			stack[top] = stack[top] * stack[top + 1];
+			break;
+		case SyntaxTree.DIV:
+			top--;
+			stack[top] = stack[top] / stack[top + 1];
+			break;
+		case SyntaxTree.NEG:
+			stack[top] = -stack[top];
+			break;
+		case SyntaxTree.SQRT:
+			stack[top] = Math.sqrt(stack[top]);
+			break;
+		case SyntaxTree.LOG:
+			stack[top] = Math.log(stack[top]);
+			break;
+		case SyntaxTree.SIN:
+			stack[top] = Math.sin(stack[top]);
+			break;
+		case SyntaxTree.COS:
+			stack[top] = Math.cos(stack[top]);
+			break;
+		case SyntaxTree.ASSIGN:
+			// targets are bound by the caller
+			break;
+		default:
+			throw new EvaluationException("Arrays are not supported in scalar evaluation", tree.position(node));
+		}
+		return top;
+	}
+
+	/**
+	 * Evaluate a tree holding arrays against the scalar and array bindings.
+	 * 
+	 * @param budget null for no limits
+	 */
+	private Object evaluateArrays(SyntaxTree tree, Budget budget) {
+		Object[] variables = new Object[tree.variableCount()];
+		for (int v = 0; v < variables.length; v++) {
+			String name = tree.variable(v);
+			Object value = bindings.get(name);
+			if (value == null) {
+				value = arrays.get(name);
+			}
+			if (value == null) {
+				throw unbound(tree, v);
+			}
+			variables[v] = value;
+		}
+		return evaluateArrays(tree, variables, budget, maxArrayLength);
+	}
+
+	/**
+	 * Evaluate a tree holding arrays. Stack values are {@code Double} or
+	 * {@code double[]}, element-wise work is done by {@link ArrayOps}.
+	 * 
+	 * @param variables {@code Double} or {@code double[]} value of each
+	 *            variable of the tree
+	 * @param budget charged before each node for the elements it produces
+	 *            or reduces, null for no limits
+	 * @param maxArrayLength element limit of {@code range}
+	 */
+	static Object evaluateArrays(SyntaxTree tree, Object[] variables, Budget budget, int maxArrayLength) {
+		Object[] stack = new Object[tree.maxStackDepth()];
+		int top = -1;
+		for (int i = 0; i < tree.size(); i++) {
+			byte op = tree.op(i);
+			if (budget != null && op != SyntaxTree.RANGE) {
+				budget.charge(SyntaxTree.weight(op) * elements(tree, i, variables, stack, top));
 			}
-			rpnTokens.add(stack.pop());
-		}
-		if (state == ParsingState.EXPECT_OPERAND){
-			throw new ParsingException("end of input reached whereas operand expected");
-		}
-		return rpnTokens;
-	}
-
-	/**
-	 * Evaluate valid reverse polish notation
-	 */
-	private Double evaluateRPN(Iterator<Token> tokens) {
-
-		Stack<Double> stack = new Stack<>();
-		while (tokens.hasNext()) {
-			Token token = tokens.next();
-			if (token instanceof Operator) {
-				if (token == Operator.ADDITION){
-					Double arg2 = stack.pop();
-					Double arg1 = stack.pop();
-					stack.push(arg1 + arg2);
-				} else if (token == Operator.SUBSTRACTION){
-					Double arg2 = stack.pop();
-					Double arg1 = stack.pop();
-					stack.push(arg1 - arg2);
-				} else if (token == Operator.MULTIPLICATION){
-					Double arg2 = stack.pop();
-					Double arg1 = stack.pop();
-					stack.push(arg1 * arg2);
-				} else if (token == Operator.DIVISION){
-					Double arg2 = stack.pop();
-					Double arg1 = stack.pop();
-					stack.push(arg1 / arg2);
+			switch (op) {
+			case SyntaxTree.CONSTANT:
+				stack[++top] = tree.constant(tree.arg(i));
+				break;
+			case SyntaxTree.VARIABLE:
+				stack[++top] = variables[tree.arg(i)];
+				break;
+			case SyntaxTree.ADD:
+			case SyntaxTree.SUB:
+			case SyntaxTree.MUL:
+			case SyntaxTree.DIV:
+				top--;
+				stack[top] = ArrayOps.binary(op, stack[top], stack[top + 1]);
+				break;
+			case SyntaxTree.NEG:
+			case SyntaxTree.SQRT:
+			case SyntaxTree.LOG:
+			case SyntaxTree.SIN:
+			case SyntaxTree.COS:
+				stack[top] = ArrayOps.map(op, stack[top]);
+				break;
+			case SyntaxTree.RANGE:
+				double step = scalar(stack[top--]);
+				double stop = scalar(stack[top--]);
+				double start = scalar(stack[top--]);
+				int length = ArrayOps.rangeLength(start, stop, step, maxArrayLength);
+				if (budget != null) {
+					// charged before allocating
+					budget.charge(length);
 				}
-			} else if (token instanceof Function) {
-				Double arg;
-				if (token == Function.SQRT) {
-					arg = stack.pop();
-					stack.push(Math.sqrt(arg));
-				} else if (token == Function.LOG) {
-					arg = stack.pop();
-					stack.push(Math.log(arg));
-				} else if (token == Function.SIN) {
-					arg = stack.pop();
-					stack.push(Math.sin(arg));
-				} else if (token == Function.COS) {
-					arg = stack.pop();
-					stack.push(Math.cos(arg));
+				stack[++top] = ArrayOps.range(start, step, length);
+				break;
+			case SyntaxTree.SUM:
+				stack[top] = ArrayOps.sum(stack[top]);
+				break;
+			case SyntaxTree.MEAN:
+				stack[top] = ArrayOps.mean(stack[top]);
+				break;
+			case SyntaxTree.MIN:
+				stack[top] = ArrayOps.min(stack[top]);
+				break;
+			case SyntaxTree.MAX:
+				stack[top] = ArrayOps.max(stack[top]);
+				break;
+			case SyntaxTree.ARRAY:
+				double[] array = new double[tree.arg(i)];
+				for (int j = array.length - 1; j >= 0; j--) {
+					array[j] = scalar(stack[top--]);
 				}
-			} else if (token instanceof Identifier) {
-				stack.push(bindings.get(token.lexeme));
-			} else if (token instanceof Decimal) {
-				stack.push(((Decimal) token).value);
-			} else {
-				assert false;
+				stack[++top] = array;
+				break;
+			case SyntaxTree.ASSIGN:
+				// targets are bound by the caller
+				break;
+			default:
+				assert false : "unknown opcode " + op;
 			}
 		}
-		return stack.pop();
+		return stack[0];
 	}
-	
+
 	/**
-	 * Basic expression syntax validation. The parser expects either an operand
-	 * (function call, identifiers, left parenthesis or number) or an operator 
-	 * (operator or right parenthesis).
+	 * @return number of elements node {@code i} produces, or reduces for a
+	 *         reduction, from the operands on the stack
 	 */
-	private void checkState(ParsingState expected, ParsingState state){
-		if (expected != state){
-			if (state == ParsingState.EXPECT_OPERAND) {
-				throw new ParsingException("An operator or right parenthesis was parsed whereas an operand "
-						+ "(function call, identifiers, left parenthesis, number) was expected");
-			} else if (state == ParsingState.EXPECT_OPERATOR) {
-				throw new ParsingException(
-						"An operand (function call, identifiers, left parenthesis, number)"
-						+ " was parsed whereas an operator or right parenthesis was expected");
-			}
+	private static long elements(SyntaxTree tree, int i, Object[] variables, Object[] stack, int top) {
+		switch (tree.op(i)) {
+		case SyntaxTree.CONSTANT:
+			return 1;
+		case SyntaxTree.VARIABLE:
+			return length(variables[tree.arg(i)]);
+		case SyntaxTree.ADD:
+		case SyntaxTree.SUB:
+		case SyntaxTree.MUL:
+		case SyntaxTree.DIV:
+			return Math.max(length(stack[top - 1]), length(stack[top]));
+		case SyntaxTree.ARRAY:
+			return tree.arg(i);
+		default:
+			return length(stack[top]);
 		}
 	}
-	
-	public static enum ParsingState { EXPECT_OPERAND, EXPECT_OPERATOR}
-}
 
+	private static long length(Object value) {
+		return value instanceof double[] ? ((double[]) value).length : 1;
+	}
+
+	private static double scalar(Object value) {
+		if (value instanceof double[]) {
+			throw new EvaluationException("Array elements and range bounds must be scalars");
+		}
+		return (Double) value;
+	}
+}
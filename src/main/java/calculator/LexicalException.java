@@ -1,16 +1,46 @@
 package calculator;
 
+/**
+ * Thrown when the input contains a character sequence that is not a token.
+ * <p>
+ * Stack traces are not collected and the message is only formatted when
+ * requested, so rejecting invalid input stays cheap.
+ */
 public class LexicalException extends RuntimeException {
 
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * index of the offending character, -1 when unknown
+	 */
+	public final int position;
+	private final String reason;
+
 	public LexicalException(String message, Throwable cause) {
-		super(message, cause);
+		super(message, cause, false, false);
+		this.position = -1;
+		this.reason = null;
 	}
 
 	public LexicalException(String message) {
-		super(message);
+		this(message, (Throwable) null);
 	}
 	
 	public LexicalException(int i){
-		this(String.format("Lexical Error at index %s", i));
+		this("Lexical Error", i);
+	}
+
+	public LexicalException(String reason, int position) {
+		super(null, null, false, false);
+		this.position = position;
+		this.reason = reason;
+	}
+
+	@Override
+	public String getMessage() {
+		if (reason == null) {
+			return super.getMessage();
+		}
+		return reason + " at index " + position;
 	}
 }
@@ -0,0 +1,339 @@
+package calculator;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import calculator.admission.Budget;
+
+/**
+ * Evaluates large scalar trees on a fork-join pool.
+ * <p>
+ * Each subtree has a static cost, see {@link SyntaxTree#cost(int)}.
+ * Evaluation runs in two phases:
+ * <ol>
+ * <li>The tree is cut into units, the largest subtrees costing at most the
+ * cost threshold. Units are independent: they are grouped into batches of
+ * about the cost threshold and evaluated in parallel, each batch
+ * sequentially.
+ * <li>The nodes above the units are evaluated sequentially in postorder,
+ * reading unit values instead of evaluating their nodes.
+ * </ol>
+ * Every operation receives the same operands as in a sequential
+ * evaluation, hence results are identical bit for bit.
+ * <p>
+ * Optionally, chains of additions and subtractions, or of multiplications,
+ * above the units are reassociated: their operands are folded pairwise, in
+ * parallel for long chains, subtracted operands being negated. Results then
+ * depend on the chain lengths but not on the number of threads, and may
+ * differ from the sequential evaluation in the last bits.
+ * <p>
+ * Instances are immutable and may be shared between threads.
+ */
+public final class ParallelEvaluator {
+
+	/**
+	 * trees of fewer nodes are evaluated sequentially
+	 */
+	public static final int DEFAULT_SIZE_THRESHOLD = 1 << 14;
+	/**
+	 * cost of a unit of parallel work
+	 */
+	public static final long DEFAULT_COST_THRESHOLD = 1 << 12;
+
+	/**
+	 * operands folded sequentially by a reassociated fold task
+	 */
+	private static final int FOLD_GRAIN = 1 << 12;
+
+	public final int sizeThreshold;
+	public final long costThreshold;
+	public final boolean reassociate;
+
+	private final ForkJoinPool pool;
+
+	public ParallelEvaluator() {
+		this(DEFAULT_SIZE_THRESHOLD, DEFAULT_COST_THRESHOLD, false, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param sizeThreshold number of nodes from which trees are split
+	 * @param costThreshold largest cost of a unit, see {@link SyntaxTree#cost(int)}
+	 * @param reassociate whether additions and multiplications may be
+	 *            reassociated
+	 */
+	public ParallelEvaluator(int sizeThreshold, long costThreshold, boolean reassociate, ForkJoinPool pool) {
+		if (sizeThreshold < 1 || costThreshold < 1) {
+			throw new IllegalArgumentException("thresholds must be positive");
+		}
+		this.sizeThreshold = sizeThreshold;
+		this.costThreshold = costThreshold;
+		this.reassociate = reassociate;
+		this.pool = pool;
+	}
+
+	/**
+	 * Evaluate a scalar tree, see {@link Evaluator#evaluate(SyntaxTree, double[])}.
+	 * Small trees, and all trees on a single thread pool unless reassociating,
+	 * are evaluated sequentially.
+	 */
+	double evaluate(SyntaxTree tree, double[] variables) {
+		return evaluate(tree, variables, null);
+	}
+
+	/**
+	 * @param budget whose deadline is checked before each unit and every
+	 *            {@link Budget#CHECK_INTERVAL} upper nodes, null for none
+	 */
+	double evaluate(SyntaxTree tree, double[] variables, Budget budget) {
+		if (tree.size() < sizeThreshold || pool.getParallelism() == 1 && !reassociate) {
+			return budget == null ? Evaluator.evaluate(tree, variables) : Evaluator.evaluate(tree, variables, budget);
+		}
+		return new Plan(tree).evaluate(variables, budget);
+	}
+
+	/**
+	 * Units and upper nodes of a tree.
+	 */
+	private final class Plan {
+		final SyntaxTree tree;
+
+		// units in postorder
+		int[] unitStarts = new int[64];
+		int[] unitRoots = new int[64];
+		int units = 0;
+		/**
+		 * unitCosts[u + 1] - unitCosts[v] is the cost of units v to u
+		 */
+		long[] unitCosts;
+
+		/**
+		 * reassociated chains: number of operands at the chain root, -1 for
+		 * the inner chain nodes, 0 elsewhere
+		 */
+		final int[] chains;
+		/**
+		 * reassociated chain operands to negate, as they are subtracted
+		 */
+		final boolean[] negated;
+
+		Plan(SyntaxTree tree) {
+			this.tree = tree;
+			int size = tree.size();
+			chains = reassociate ? new int[size] : null;
+			negated = reassociate ? new boolean[size] : null;
+			split();
+		}
+
+		boolean isChain(int node, boolean additive) {
+			byte op = tree.op(node);
+			return tree.cost(node) > costThreshold
+					&& (additive ? op == SyntaxTree.ADD || op == SyntaxTree.SUB : op == SyntaxTree.MUL);
+		}
+
+		/**
+		 * Collect the units, scanning nodes from the root down in reverse
+		 * postorder: the ancestors of a node are visited before it and a
+		 * unit is skipped as a whole.
+		 */
+		void split() {
+			for (int node = tree.root(); node >= 0;) {
+				if (tree.cost(node) <= costThreshold) {
+					addUnit(node);
+					node = tree.start(node) - 1;
+				} else {
+					if (reassociate && chains[node] == 0 && isChain(node, tree.op(node) != SyntaxTree.MUL)) {
+						addChain(node);
+					}
+					node--;
+				}
+			}
+			reverse(unitStarts, 0, units - 1);
+			reverse(unitRoots, 0, units - 1);
+			unitCosts = new long[units + 1];
+			for (int u = 0; u < units; u++) {
+				unitCosts[u + 1] = unitCosts[u] + tree.cost(unitRoots[u]);
+			}
+		}
+
+		/**
+		 * Mark the chain rooted at {@code root} and its operands.
+		 */
+		void addChain(int root) {
+			boolean additive = tree.op(root) != SyntaxTree.MUL;
+			int operands = 0;
+			int[] inner = { root };
+			boolean[] innerNegated = { false };
+			int pending = 1;
+			while (pending > 0) {
+				int current = inner[--pending];
+				boolean sign = innerNegated[pending];
+				chains[current] = -1;
+				// right operand of a subtraction
+				boolean subtracted = tree.op(current) == SyntaxTree.SUB;
+				for (int child = current - 1; child >= tree.start(current); child = tree.start(child) - 1) {
+					boolean childNegated = sign ^ subtracted;
+					subtracted = false;
+					if (isChain(child, additive)) {
+						if (pending == inner.length) {
+							inner = Arrays.copyOf(inner, pending * 2);
+							innerNegated = Arrays.copyOf(innerNegated, pending * 2);
+						}
+						innerNegated[pending] = childNegated;
+						inner[pending++] = child;
+					} else {
+						negated[child] = childNegated;
+						operands++;
+					}
+				}
+			}
+			chains[root] = operands;
+		}
+
+		void addUnit(int node) {
+			if (units == unitRoots.length) {
+				unitStarts = Arrays.copyOf(unitStarts, units * 2);
+				unitRoots = Arrays.copyOf(unitRoots, units * 2);
+			}
+			unitStarts[units] = tree.start(node);
+			unitRoots[units] = node;
+			units++;
+		}
+
+		double evaluate(double[] variables, Budget budget) {
+			double[] values = new double[units];
+			pool.invoke(new Batch(variables, values, budget, 0, units));
+
+			// upper nodes, with room for the operands of reassociated chains
+			double[] stack = new double[reassociate ? tree.size() : tree.maxStackDepth()];
+			int top = -1;
+			int unit = 0;
+			for (int i = 0, steps = 0; i < tree.size(); i++) {
+				if (budget != null && ++steps % Budget.CHECK_INTERVAL == 0) {
+					budget.checkDeadline();
+				}
+				if (unit < units && i == unitStarts[unit]) {
+					stack[++top] = values[unit];
+					i = unitRoots[unit++];
+				} else if (reassociate && chains[i] != 0) {
+					if (chains[i] > 0) {
+						// the chain operands are on top of the stack
+						int operands = chains[i];
+						int from = top - operands + 1;
+						byte op = tree.op(i) == SyntaxTree.MUL ? SyntaxTree.MUL : SyntaxTree.ADD;
+						stack[from] = fold(op, stack, from, top + 1);
+						top = from;
+					}
+				} else {
+					top = Evaluator.step(tree, i, variables, stack, top);
+				}
+				if (reassociate && negated[i]) {
+					stack[top] = -stack[top];
+				}
+			}
+			return stack[0];
+		}
+
+		double fold(byte op, double[] values, int from, int to) {
+			if (to - from <= FOLD_GRAIN) {
+				return Fold.sequential(op, values, from, to);
+			}
+			return pool.invoke(new Fold(op, values, from, to));
+		}
+
+		/**
+		 * Evaluates units {@code from} to {@code to} excluded.
+		 */
+		private final class Batch extends RecursiveAction {
+
+			private static final long serialVersionUID = 1L;
+
+			final double[] variables;
+			final double[] values;
+			final Budget budget;
+			final int from;
+			final int to;
+
+			Batch(double[] variables, double[] values, Budget budget, int from, int to) {
+				this.variables = variables;
+				this.values = values;
+				this.budget = budget;
+				this.from = from;
+				this.to = to;
+			}
+
+			@Override
+			protected void compute() {
+				if (to - from == 1 || unitCosts[to] - unitCosts[from] <= costThreshold) {
+					double[] stack = new double[tree.maxStackDepth()];
+					for (int u = from; u < to; u++) {
+						if (budget != null) {
+							budget.checkDeadline();
+						}
+						values[u] = Evaluator.evaluate(tree, variables, stack, unitStarts[u], unitRoots[u]);
+					}
+				} else {
+					// split at half of the cost
+					long half = (unitCosts[from] + unitCosts[to]) / 2;
+					int middle = Arrays.binarySearch(unitCosts, from + 1, to, half);
+					middle = Math.max(from + 1, Math.min(to - 1, middle < 0 ? -middle - 1 : middle));
+					invokeAll(new Batch(variables, values, budget, from, middle),
+							new Batch(variables, values, budget, middle, to));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Pairwise fold of {@code values[from]} to {@code values[to - 1]}.
+	 */
+	private static final class Fold extends RecursiveTask<Double> {
+
+		private static final long serialVersionUID = 1L;
+
+		final byte op;
+		final double[] values;
+		final int from;
+		final int to;
+
+		Fold(byte op, double[] values, int from, int to) {
+			this.op = op;
+			this.values = values;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Double compute() {
+			if (to - from <= FOLD_GRAIN) {
+				return sequential(op, values, from, to);
+			}
+			int middle = (from + to) >>> 1;
+			Fold left = new Fold(op, values, from, middle);
+			left.fork();
+			double right = new Fold(op, values, middle, to).compute();
+			return apply(op, left.join(), right);
+		}
+
+		static double sequential(byte op, double[] values, int from, int to) {
+			if (to - from == 1) {
+				return values[from];
+			}
+			int middle = (from + to) >>> 1;
+			return apply(op, sequential(op, values, from, middle), sequential(op, values, middle, to));
+		}
+
+		static double apply(byte op, double a, double b) {
+			return op == SyntaxTree.ADD ? a + b : a * b;
+		}
+	}
+
+	private static void reverse(int[] array, int from, int to) {
+		for (; from < to; from++, to--) {
+			int swap = array[from];
+			array[from] = array[to];
+			array[to] = swap;
+		}
+	}
+}
@@ -0,0 +1,289 @@
+package calculator;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import calculator.token.Decimal;
+import calculator.token.Function;
+import calculator.token.Operator;
+import calculator.token.SpecialCharacter;
+import calculator.token.Token;
+import calculator.token.TokenKind;
+
+/**
+ * Pratt parser, aka top down operator precedence parser --
+ * https://en.wikipedia.org/wiki/Operator-precedence_parser#Pratt_parsing
+ * <p>
+ * Builds a {@link SyntaxTree} from the tokens produced by the
+ * {@link Tokenizer}. Grammar defined at {@link Calculator#eval}.
+ * <p>
+ * {@link #parseExpression(int)} parses an operand, then keeps extending it
+ * with the infix tokens binding tighter than its argument. Binding powers
+ * and opcodes are read from the tokens: operators carry their precedence,
+ * binary and prefix opcodes, functions their arity and opcode. Adding an
+ * operator or a function thus only requires a new token constant.
+ * <ul>
+ * <li>"=" binds the loosest and is right associative. Its left side must be
+ * a single identifier and it is only allowed outside of parentheses,
+ * brackets and calls.
+ * <li>Binary operators bind according to their precedence and are left
+ * associative.
+ * <li>Prefix operators bind tighter than any binary operator.
+ * <li>A function name is only a call when followed by "(", otherwise it is
+ * an identifier, so that names such as "sum" or "max" remain usable as
+ * variables.
+ * </ul>
+ * <p>
+ * Nodes are appended as soon as their operands are parsed, which yields the
+ * postorder layout of the tree.
+ * <p>
+ * Each nesting level, assignments included, costs a few stack frames, so
+ * the nesting is limited to {@link #MAX_NESTING} levels, which keeps the
+ * recursion within the default 1 MB thread stack even when interpreted.
+ * This is a deliberate change from the former iterative shunting-yard
+ * parser, which accepted any nesting: deeper input is rejected with a
+ * {@link ParsingException} instead of risking a {@link StackOverflowError}.
+ */
+public class Parser {
+
+	/**
+	 * nesting limit of parentheses, brackets, calls, prefix operators and
+	 * operands of operators of increasing precedence, bounding the parser
+	 * recursion
+	 */
+	public static final int MAX_NESTING = 1000;
+
+	private static final int BINDING_POWER = 1;
+	private static final int PREFIX_POWER = 1000;
+
+	static final Set<TokenKind> OPERAND = Collections.unmodifiableSet(EnumSet.of(TokenKind.NUMBER,
+			TokenKind.IDENTIFIER, TokenKind.FUNCTION, TokenKind.OPERATOR, TokenKind.LEFT_PAREN, TokenKind.LEFT_BRACKET));
+	private static final Set<TokenKind> AFTER_EXPRESSION = Collections
+			.unmodifiableSet(EnumSet.of(TokenKind.OPERATOR, TokenKind.END_OF_INPUT));
+	private static final Set<TokenKind> AFTER_PARENTHESIZED = Collections
+			.unmodifiableSet(EnumSet.of(TokenKind.OPERATOR, TokenKind.RIGHT_PAREN));
+	private static final Set<TokenKind> AFTER_ARGUMENT = Collections
+			.unmodifiableSet(EnumSet.of(TokenKind.OPERATOR, TokenKind.COMMA, TokenKind.RIGHT_PAREN));
+	private static final Set<TokenKind> AFTER_ELEMENT = Collections
+			.unmodifiableSet(EnumSet.of(TokenKind.OPERATOR, TokenKind.COMMA, TokenKind.RIGHT_BRACKET));
+	private static final Set<TokenKind> IDENTIFIER = Collections.unmodifiableSet(EnumSet.of(TokenKind.IDENTIFIER));
+
+	private final Tokenizer tokenizer;
+	private final List<Token> tokens;
+	private final SyntaxTree tree;
+	/**
+	 * index of the next token
+	 */
+	private int index = 0;
+	/**
+	 * number of enclosing parentheses, brackets and calls
+	 */
+	private int nesting = 0;
+	/**
+	 * number of pending {@link #parseExpression(int)} calls
+	 */
+	private int depth = 0;
+
+	/**
+	 * @param tokens tokens produced by the {@code tokenizer}, with constant
+	 *            time random access
+	 */
+	public Parser(Tokenizer tokenizer, List<Token> tokens) {
+		this.tokenizer = tokenizer;
+		this.tokens = tokens;
+		this.tree = new SyntaxTree(tokens.size());
+	}
+
+	/**
+	 * @throws {@link ParsingException}
+	 */
+	public SyntaxTree parse() {
+		parseExpression(0);
+		if (index < tokens.size()) {
+			throw operatorExpected(AFTER_EXPRESSION, "parenthesis");
+		}
+		return tree;
+	}
+
+	private void parseExpression(int minPower) {
+		if (++depth > MAX_NESTING) {
+			throw new ParsingException("Expression nested too deeply", tokenizer.position(index),
+					Collections.<TokenKind> emptySet());
+		}
+		parseOperand();
+		while (index < tokens.size()) {
+			Token token = tokens.get(index);
+			int power = leftBindingPower(token);
+			if (power <= minPower) {
+				break;
+			}
+			int position = tokenizer.position(index);
+			index++;
+			if (token == SpecialCharacter.BINDING) {
+				parseAssignment(position);
+			} else {
+				parseExpression(power);
+				tree.add(((Operator) token).opcode, 0, position, 2);
+			}
+		}
+		depth--;
+	}
+
+	private static int leftBindingPower(Token token) {
+		if (token.kind == TokenKind.OPERATOR) {
+			return 10 * (((Operator) token).precedence + 1);
+		} else if (token == SpecialCharacter.BINDING) {
+			return BINDING_POWER;
+		}
+		return 0;
+	}
+
+	/**
+	 * The name on the left side was parsed as a variable, the only node of
+	 * the tree so far: turn it into an assignment target. Function names not
+	 * followed by "(" are names as well.
+	 */
+	private void parseAssignment(int position) {
+		Token target = tokens.get(index - 2);
+		if (nesting > 0) {
+			throw new ParsingException("Assignments are only allowed at the top level", position,
+					AFTER_PARENTHESIZED);
+		} else if ((target.kind != TokenKind.IDENTIFIER && target.kind != TokenKind.FUNCTION) || tree.size() != 1
+				|| tree.op(0) != SyntaxTree.VARIABLE) {
+			throw new ParsingException("The left side of the assignment character must be an indentifier",
+					tree.position(tree.start(tree.root())), IDENTIFIER);
+		}
+		tree.clearTarget();
+		// right associative
+		parseExpression(BINDING_POWER - 1);
+		tree.addAssignment(target.lexeme, position);
+	}
+
+	private void parseOperand() {
+		if (index == tokens.size()) {
+			throw operandExpected();
+		}
+		Token token = tokens.get(index);
+		int position = tokenizer.position(index);
+		switch (token.kind) {
+		case NUMBER:
+			index++;
+			tree.addConstant(((Decimal) token).value, position);
+			break;
+		case IDENTIFIER:
+			index++;
+			tree.addVariable(tree.variableIndex(token.lexeme), position);
+			break;
+		case OPERATOR:
+			byte prefixOpcode = ((Operator) token).prefixOpcode;
+			if (prefixOpcode == SyntaxTree.NONE) {
+				throw operandExpected();
+			}
+			index++;
+			parseExpression(PREFIX_POWER);
+			tree.add(prefixOpcode, 0, position, 1);
+			break;
+		case FUNCTION:
+			index++;
+			if (index < tokens.size() && tokens.get(index) == SpecialCharacter.LEFT_PAREN) {
+				parseCall((Function) token, position);
+			} else {
+				tree.addVariable(tree.variableIndex(token.lexeme), position);
+			}
+			break;
+		case LEFT_PAREN:
+			index++;
+			nesting++;
+			parseExpression(0);
+			expect(SpecialCharacter.RIGHT_PAREN, AFTER_PARENTHESIZED, "parenthesis");
+			nesting--;
+			break;
+		case LEFT_BRACKET:
+			index++;
+			nesting++;
+			int elements = parseList(SpecialCharacter.RIGHT_BRACKET, AFTER_ELEMENT, "bracket");
+			nesting--;
+			tree.add(SyntaxTree.ARRAY, elements, position, elements);
+			break;
+		default:
+			throw operandExpected();
+		}
+	}
+
+	/**
+	 * Parse the arguments of a call, from the left parenthesis on.
+	 */
+	private void parseCall(Function function, int position) {
+		index++;
+		nesting++;
+		int arguments = parseList(SpecialCharacter.RIGHT_PAREN, AFTER_ARGUMENT, "parenthesis");
+		nesting--;
+		if (arguments != function.arity) {
+			throw new ParsingException(String.format("%s expects %s argument(s), %s given", function.lexeme,
+					function.arity, arguments), position, Collections.<TokenKind> emptySet());
+		}
+		tree.add(function.opcode, 0, position, arguments);
+	}
+
+	/**
+	 * Parse comma separated expressions up to the {@code closing} token.
+	 *
+	 * @return number of expressions
+	 */
+	private int parseList(Token closing, Set<TokenKind> expected, String delimiter) {
+		int count = 0;
+		while (true) {
+			parseExpression(0);
+			count++;
+			if (index < tokens.size() && tokens.get(index) == SpecialCharacter.COMMA) {
+				index++;
+			} else {
+				expect(closing, expected, delimiter);
+				return count;
+			}
+		}
+	}
+
+	private void expect(Token closing, Set<TokenKind> expected, String delimiter) {
+		if (index < tokens.size() && tokens.get(index) == closing) {
+			index++;
+		} else {
+			throw operatorExpected(expected, delimiter);
+		}
+	}
+
+	private ParsingException operandExpected() {
+		if (index == tokens.size()) {
+			return new ParsingException("end of input reached whereas operand expected", tokenizer.position(index),
+					OPERAND);
+		}
+		return new ParsingException("An operator or right parenthesis was parsed whereas an operand "
+				+ "(function call, identifiers, left parenthesis, number) was expected", tokenizer.position(index),
+				OPERAND);
+	}
+
+	/**
+	 * @param delimiter name of the innermost pending delimiter
+	 */
+	private ParsingException operatorExpected(Set<TokenKind> expected, String delimiter) {
+		int position = tokenizer.position(index);
+		if (index == tokens.size()) {
+			return new ParsingException("Mismatched " + delimiter, position, expected);
+		}
+		Token token = tokens.get(index);
+		if (token == SpecialCharacter.RIGHT_PAREN) {
+			return new ParsingException("Mismatched parenthesis", position, expected);
+		} else if (token == SpecialCharacter.RIGHT_BRACKET) {
+			return new ParsingException("Mismatched bracket", position, expected);
+		} else if (token == SpecialCharacter.COMMA) {
+			return new ParsingException("A comma must separate function arguments or array elements", position,
+					expected);
+		} else if (token == SpecialCharacter.BINDING) {
+			return new ParsingException("Assignments are only allowed at the top level", position, expected);
+		}
+		return new ParsingException("An operand (function call, identifiers, left parenthesis, number)"
+				+ " was parsed whereas an operator or right parenthesis was expected", position, expected);
+	}
+}
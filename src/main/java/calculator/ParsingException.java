@@ -1,8 +1,50 @@
 package calculator;
 
+import java.util.Collections;
+import java.util.Set;
+
+import calculator.token.TokenKind;
+
+/**
+ * Thrown when the tokens of the input do not form a valid expression.
+ * <p>
+ * Stack traces are not collected and the message is only formatted when
+ * requested, so rejecting invalid input stays cheap.
+ */
 public class ParsingException extends RuntimeException {
 
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * index of the offending token in the input, its length when the end of
+	 * input was reached, -1 when unknown
+	 */
+	public final int position;
+	/**
+	 * token kinds that would have been accepted at {@link #position}
+	 */
+	public final Set<TokenKind> expected;
+	private final String reason;
+
 	public ParsingException(String message) {
-		super(message);
+		super(message, null, false, false);
+		this.position = -1;
+		this.expected = Collections.emptySet();
+		this.reason = null;
+	}
+
+	public ParsingException(String reason, int position, Set<TokenKind> expected) {
+		super(null, null, false, false);
+		this.position = position;
+		this.expected = expected;
+		this.reason = reason;
+	}
+
+	@Override
+	public String getMessage() {
+		if (reason == null) {
+			return super.getMessage();
+		}
+		return reason + " at index " + position;
 	}
 }
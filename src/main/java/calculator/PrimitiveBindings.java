@@ -0,0 +1,394 @@
+package calculator;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Compact bindings store for large numbers of variables, a drop-in
+ * replacement for the default {@code LinkedHashMap} of {@link Calculator}.
+ * <p>
+ * Entries are appended to parallel arrays of keys, key hashes and primitive
+ * {@code double} values, in insertion order. An open-addressing table with
+ * linear probing maps each key to its entry index. Removal leaves a hole in
+ * the entry arrays and a tombstone in the table; both are reclaimed when the
+ * entry arrays are full, by compacting and rehashing.
+ * <p>
+ * Iteration follows insertion order. Iterators are not fail-fast and
+ * {@code null} values are not supported. Use {@link #getDouble} and
+ * {@link #putDouble} to avoid boxing.
+ */
+public class PrimitiveBindings extends AbstractMap<String, Double> {
+
+	private static final int MIN_CAPACITY = 16;
+
+	/**
+	 * entry index + 1 for each slot, 0 for empty slots, {@link #TOMBSTONE}
+	 * for removed entries
+	 */
+	private static final int TOMBSTONE = -1;
+
+	private int[] slots;
+	private String[] keys;
+	private int[] hashes;
+	private double[] values;
+	/**
+	 * number of used entry indexes, holes included
+	 */
+	private int end = 0;
+	private int size = 0;
+
+	public PrimitiveBindings() {
+		this(MIN_CAPACITY);
+	}
+
+	/**
+	 * @param expectedSize number of bindings to hold without resizing
+	 */
+	public PrimitiveBindings(int expectedSize) {
+		allocate(tableCapacity(expectedSize));
+	}
+
+	/**
+	 * @return the value bound to {@code key}, or {@code missing} when unbound
+	 */
+	public double getDouble(String key, double missing) {
+		int index = indexOf(key);
+		return index < 0 ? missing : values[index];
+	}
+
+	/**
+	 * Bind {@code key} to {@code value}. A rebound key keeps its position in
+	 * the iteration order.
+	 */
+	public void putDouble(String key, double value) {
+		int hash = hash(key);
+		int slot = findSlot(key, hash);
+		if (slots[slot] > 0) {
+			values[slots[slot] - 1] = value;
+			return;
+		}
+		if (end == keys.length) {
+			rehash(size + 1);
+			slot = findSlot(key, hash);
+		}
+		keys[end] = key;
+		hashes[end] = hash;
+		values[end] = value;
+		end++;
+		size++;
+		slots[slot] = end;
+	}
+
+	/**
+	 * @return whether {@code key} was bound
+	 */
+	public boolean removeKey(Object key) {
+		if (!(key instanceof String)) {
+			return false;
+		}
+		int hash = hash((String) key);
+		int slot = findSlot((String) key, hash);
+		if (slots[slot] <= 0) {
+			return false;
+		}
+		removeEntry(slot, slots[slot] - 1);
+		return true;
+	}
+
+	@Override
+	public Double get(Object key) {
+		if (!(key instanceof String)) {
+			return null;
+		}
+		int index = indexOf((String) key);
+		return index < 0 ? null : values[index];
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return key instanceof String && indexOf((String) key) >= 0;
+	}
+
+	@Override
+	public Double put(String key, Double value) {
+		if (key == null || value == null) {
+			throw new NullPointerException("null keys and values are not supported");
+		}
+		int index = indexOf(key);
+		Double previous = index < 0 ? null : values[index];
+		putDouble(key, value);
+		return previous;
+	}
+
+	@Override
+	public Double remove(Object key) {
+		if (!(key instanceof String)) {
+			return null;
+		}
+		int slot = findSlot((String) key, hash((String) key));
+		if (slots[slot] <= 0) {
+			return null;
+		}
+		int index = slots[slot] - 1;
+		double previous = values[index];
+		removeEntry(slot, index);
+		return previous;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(slots, 0);
+		Arrays.fill(keys, 0, end, null);
+		end = 0;
+		size = 0;
+	}
+
+	@Override
+	public Set<String> keySet() {
+		return new KeySet();
+	}
+
+	@Override
+	public Set<Map.Entry<String, Double>> entrySet() {
+		return new EntrySet();
+	}
+
+	private static int hash(String key) {
+		int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * @return the entry index of {@code key}, or -1 when unbound
+	 */
+	private int indexOf(String key) {
+		return slots[findSlot(key, hash(key))] - 1;
+	}
+
+	/**
+	 * @return the slot holding {@code key}, or the empty slot ending its
+	 *         probe sequence
+	 */
+	private int findSlot(String key, int hash) {
+		int mask = slots.length - 1;
+		int slot = hash & mask;
+		while (true) {
+			int entry = slots[slot];
+			if (entry == 0) {
+				return slot;
+			} else if (entry > 0 && hashes[entry - 1] == hash && key.equals(keys[entry - 1])) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private void removeEntry(int slot, int index) {
+		slots[slot] = TOMBSTONE;
+		keys[index] = null;
+		size--;
+	}
+
+	/**
+	 * Entry indexes double as the table occupancy (live slots plus
+	 * tombstones), hence the entry arrays hold 3/4 of the table capacity.
+	 */
+	private void allocate(int capacity) {
+		slots = new int[capacity];
+		int entries = capacity / 4 * 3;
+		keys = new String[entries];
+		hashes = new int[entries];
+		values = new double[entries];
+	}
+
+	private static int tableCapacity(int expectedSize) {
+		int capacity = MIN_CAPACITY;
+		while (capacity / 4 * 3 < expectedSize) {
+			if (capacity >= 1 << 30) {
+				throw new IllegalStateException("Too many bindings");
+			}
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	/**
+	 * Compact the entries, dropping holes, and rebuild the table, growing it
+	 * when half full or more.
+	 */
+	private void rehash(int required) {
+		String[] oldKeys = keys;
+		int[] oldHashes = hashes;
+		double[] oldValues = values;
+		int oldEnd = end;
+		allocate(tableCapacity(Math.max(required, size * 2)));
+
+		int mask = slots.length - 1;
+		end = 0;
+		for (int i = 0; i < oldEnd; i++) {
+			if (oldKeys[i] != null) {
+				keys[end] = oldKeys[i];
+				hashes[end] = oldHashes[i];
+				values[end] = oldValues[i];
+				int slot = oldHashes[i] & mask;
+				while (slots[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				end++;
+				slots[slot] = end;
+			}
+		}
+	}
+
+	/**
+	 * Iterates over live entry indexes in insertion order.
+	 */
+	private abstract class IndexIterator<E> implements Iterator<E> {
+		private int next = skipHoles(0);
+		private int current = -1;
+
+		private int skipHoles(int index) {
+			while (index < end && keys[index] == null) {
+				index++;
+			}
+			return index;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next < end;
+		}
+
+		@Override
+		public E next() {
+			if (next >= end) {
+				throw new NoSuchElementException();
+			}
+			current = next;
+			next = skipHoles(next + 1);
+			return element(current);
+		}
+
+		@Override
+		public void remove() {
+			if (current < 0 || keys[current] == null) {
+				throw new IllegalStateException();
+			}
+			String key = keys[current];
+			removeEntry(findSlot(key, hashes[current]), current);
+		}
+
+		abstract E element(int index);
+	}
+
+	private class KeySet extends AbstractSet<String> {
+		@Override
+		public Iterator<String> iterator() {
+			return new IndexIterator<String>() {
+				@Override
+				String element(int index) {
+					return keys[index];
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public boolean contains(Object key) {
+			return containsKey(key);
+		}
+
+		@Override
+		public boolean remove(Object key) {
+			return removeKey(key);
+		}
+
+		@Override
+		public void clear() {
+			PrimitiveBindings.this.clear();
+		}
+	}
+
+	private class EntrySet extends AbstractSet<Map.Entry<String, Double>> {
+		@Override
+		public Iterator<Map.Entry<String, Double>> iterator() {
+			return new IndexIterator<Map.Entry<String, Double>>() {
+				@Override
+				Map.Entry<String, Double> element(int index) {
+					return new Entry(index);
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public void clear() {
+			PrimitiveBindings.this.clear();
+		}
+	}
+
+	/**
+	 * View of an entry, valid until the next insertion.
+	 */
+	private class Entry implements Map.Entry<String, Double> {
+		private final int index;
+
+		Entry(int index) {
+			this.index = index;
+		}
+
+		@Override
+		public String getKey() {
+			return keys[index];
+		}
+
+		@Override
+		public Double getValue() {
+			return values[index];
+		}
+
+		@Override
+		public Double setValue(Double value) {
+			Double previous = values[index];
+			values[index] = value;
+			return previous;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Map.Entry)) {
+				return false;
+			}
+			Map.Entry<?, ?> other = (Map.Entry<?, ?>) o;
+			return getKey().equals(other.getKey()) && getValue().equals(other.getValue());
+		}
+
+		@Override
+		public int hashCode() {
+			return getKey().hashCode() ^ getValue().hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return getKey() + "=" + getValue();
+		}
+	}
+}
@@ -0,0 +1,343 @@
+package calculator;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Parsed expression, built by the {@link Parser} into flat primitive arrays
+ * without per-node objects.
+ * <p>
+ * Nodes are stored in postorder: the children of a node precede it and the
+ * subtree rooted at node {@code i} occupies indexes {@code start(i)} to
+ * {@code i}. The root is the last node. Evaluating the nodes in index order
+ * with an operand stack of {@link #maxStackDepth()} values thus computes the
+ * expression, and independent subtrees are contiguous index ranges.
+ * <p>
+ * The last child of node {@code i} is {@code i - 1}, the child before a
+ * child {@code c} is {@code start(c) - 1}.
+ */
+public final class SyntaxTree {
+
+	/**
+	 * no operation, for tokens that cannot start an operand
+	 */
+	public static final byte NONE = -1;
+
+	// leaves
+	public static final byte CONSTANT = 0;
+	public static final byte VARIABLE = 1;
+	// binary operators
+	public static final byte ADD = 2;
+	public static final byte SUB = 3;
+	public static final byte MUL = 4;
+	public static final byte DIV = 5;
+	// unary operators and functions
+	public static final byte NEG = 6;
+	public static final byte SQRT = 7;
+	public static final byte LOG = 8;
+	public static final byte SIN = 9;
+	public static final byte COS = 10;
+	// array functions
+	public static final byte RANGE = 11;
+	public static final byte SUM = 12;
+	public static final byte MEAN = 13;
+	public static final byte MIN = 14;
+	public static final byte MAX = 15;
+	public static final byte ARRAY = 16;
+	// binding of its single child to a variable, only found at the root
+	public static final byte ASSIGN = 17;
+
+	private static final int LINEAR_LOOKUP_LIMIT = 16;
+
+	private byte[] ops;
+	private int[] starts;
+	/**
+	 * constant pool index for {@link #CONSTANT}, variable index for
+	 * {@link #VARIABLE}, target index for {@link #ASSIGN}, element count for
+	 * {@link #ARRAY}
+	 */
+	private int[] args;
+	/**
+	 * input index of the token of each node
+	 */
+	private int[] positions;
+	/**
+	 * prefix sums of the node weights, see {@link #cost(int)}
+	 */
+	private long[] costs;
+	private int size = 0;
+
+	private double[] constants;
+	private int constantCount = 0;
+	private String[] variables = new String[4];
+	private int variableCount = 0;
+	/**
+	 * variable table lookup, built once the table outgrows a linear scan
+	 */
+	private Map<String, Integer> variableIndexes = null;
+	private String[] targets = new String[1];
+	private int targetCount = 0;
+
+	private boolean arrays = false;
+	private int depth = 0;
+	private int maxStackDepth = 0;
+
+	SyntaxTree(int capacity) {
+		capacity = Math.max(capacity, 1);
+		ops = new byte[capacity];
+		starts = new int[capacity];
+		args = new int[capacity];
+		positions = new int[capacity];
+		costs = new long[capacity + 1];
+		constants = new double[capacity];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public byte op(int node) {
+		return ops[node];
+	}
+
+	public int start(int node) {
+		return starts[node];
+	}
+
+	public int arg(int node) {
+		return args[node];
+	}
+
+	/**
+	 * @return the static cost of evaluating the subtree rooted at
+	 *         {@code node}, the sum of the {@link #weight(byte) weights} of
+	 *         its nodes
+	 */
+	public long cost(int node) {
+		return costs[node + 1] - costs[starts[node]];
+	}
+
+	/**
+	 * @return relative cost of evaluating a node of the given opcode, array
+	 *         operations counting as a single element
+	 */
+	public static int weight(byte op) {
+		switch (op) {
+		case ASSIGN:
+			return 0;
+		case DIV:
+		case SQRT:
+			return 4;
+		case LOG:
+		case SIN:
+		case COS:
+			return 16;
+		default:
+			return 1;
+		}
+	}
+
+	public int position(int node) {
+		return positions[node];
+	}
+
+	public int root() {
+		return size - 1;
+	}
+
+	public double constant(int index) {
+		return constants[index];
+	}
+
+	/**
+	 * @return names of the variables read by the expression, indexed by the
+	 *         {@link #VARIABLE} node argument
+	 */
+	public String[] variables() {
+		return Arrays.copyOf(variables, variableCount);
+	}
+
+	public String variable(int index) {
+		return variables[index];
+	}
+
+	public int variableCount() {
+		return variableCount;
+	}
+
+	/**
+	 * @return names the value of the expression is assigned to
+	 */
+	public String[] targets() {
+		return Arrays.copyOf(targets, targetCount);
+	}
+
+	/**
+	 * @return whether array literals or array functions occur
+	 */
+	public boolean hasArrays() {
+		return arrays;
+	}
+
+	/**
+	 * @return whether the expression evaluates to an array when all its
+	 *         variables are scalars, e.g. {@code [a,b]*2} but not
+	 *         {@code sum([a,b])}
+	 */
+	public boolean isArrayValued() {
+		if (!arrays) {
+			return false;
+		}
+		boolean[] stack = new boolean[maxStackDepth];
+		int top = -1;
+		for (int i = 0; i < size; i++) {
+			switch (ops[i]) {
+			case CONSTANT:
+			case VARIABLE:
+				stack[++top] = false;
+				break;
+			case ADD:
+			case SUB:
+			case MUL:
+			case DIV:
+				top--;
+				stack[top] |= stack[top + 1];
+				break;
+			case RANGE:
+				top -= 2;
+				stack[top] = true;
+				break;
+			case ARRAY:
+				top -= args[i] - 1;
+				stack[top] = true;
+				break;
+			case SUM:
+			case MEAN:
+			case MIN:
+			case MAX:
+				stack[top] = false;
+				break;
+			default:
+				// unary operators and assignments keep the type of their operand
+			}
+		}
+		return stack[0];
+	}
+
+	public int maxStackDepth() {
+		return maxStackDepth;
+	}
+
+	/**
+	 * @return the number of children of {@code node}
+	 */
+	public int arity(int node) {
+		switch (ops[node]) {
+		case CONSTANT:
+		case VARIABLE:
+			return 0;
+		case ADD:
+		case SUB:
+		case MUL:
+		case DIV:
+			return 2;
+		case RANGE:
+			return 3;
+		case ARRAY:
+			return args[node];
+		default:
+			return 1;
+		}
+	}
+
+	int addConstant(double value, int position) {
+		if (constantCount == constants.length) {
+			constants = Arrays.copyOf(constants, constantCount * 2);
+		}
+		constants[constantCount] = value;
+		return add(CONSTANT, constantCount++, position, 0);
+	}
+
+	int addVariable(int variable, int position) {
+		return add(VARIABLE, variable, position, 0);
+	}
+
+	/**
+	 * @return index of {@code name} in the variable table, appended if absent
+	 */
+	int variableIndex(String name) {
+		if (variableIndexes != null) {
+			Integer index = variableIndexes.get(name);
+			if (index != null) {
+				return index;
+			}
+		} else {
+			for (int i = 0; i < variableCount; i++) {
+				if (variables[i].equals(name)) {
+					return i;
+				}
+			}
+		}
+		if (variableCount == variables.length) {
+			variables = Arrays.copyOf(variables, variableCount * 2);
+		}
+		variables[variableCount] = name;
+		if (variableIndexes == null && variableCount == LINEAR_LOOKUP_LIMIT) {
+			variableIndexes = new HashMap<>();
+			for (int i = 0; i < variableCount; i++) {
+				variableIndexes.put(variables[i], i);
+			}
+		}
+		if (variableIndexes != null) {
+			variableIndexes.put(name, variableCount);
+		}
+		return variableCount++;
+	}
+
+	int addAssignment(String target, int position) {
+		if (targetCount == targets.length) {
+			targets = Arrays.copyOf(targets, targetCount * 2);
+		}
+		targets[targetCount] = target;
+		return add(ASSIGN, targetCount++, position, 1);
+	}
+
+	/**
+	 * Append a node whose {@code children} subtrees are the last ones added.
+	 */
+	int add(byte op, int arg, int position, int children) {
+		if (size == ops.length) {
+			int capacity = size * 2;
+			ops = Arrays.copyOf(ops, capacity);
+			starts = Arrays.copyOf(starts, capacity);
+			args = Arrays.copyOf(args, capacity);
+			positions = Arrays.copyOf(positions, capacity);
+			costs = Arrays.copyOf(costs, capacity + 1);
+		}
+		int start = size;
+		for (int i = 0; i < children; i++) {
+			start = starts[start - 1];
+		}
+		ops[size] = op;
+		starts[size] = start;
+		args[size] = arg;
+		positions[size] = position;
+		costs[size + 1] = costs[size] + weight(op);
+		arrays |= op >= RANGE && op <= ARRAY;
+		depth += 1 - children;
+		maxStackDepth = Math.max(maxStackDepth, depth);
+		return size++;
+	}
+
+	/**
+	 * Clear a tree made of a single {@link #VARIABLE} node, that turned out
+	 * to be an assignment target.
+	 */
+	void clearTarget() {
+		assert size == 1 && ops[0] == VARIABLE && variableCount == 1;
+		size = 0;
+		depth = 0;
+		variableCount = 0;
+	}
+}
@@ -39,6 +39,13 @@ public class TokenGenerator implements Iterator<Token> {
 		this.input = input;
 	}
 
+	/**
+	 * @return index of the first character of the next token
+	 */
+	public int position() {
+		return startIndex;
+	}
+
 	@Override
 	public boolean hasNext() {
 		return startIndex != input.length();
@@ -123,6 +130,18 @@ public class TokenGenerator implements Iterator<Token> {
 				TokenGenerator.this.token = SpecialCharacter.BINDING;
 				nextCharIndex++;
 				return;
+			case '[':
+				TokenGenerator.this.token = SpecialCharacter.LEFT_BRACKET;
+				nextCharIndex++;
+				return;
+			case ']':
+				TokenGenerator.this.token = SpecialCharacter.RIGHT_BRACKET;
+				nextCharIndex++;
+				return;
+			case ',':
+				TokenGenerator.this.token = SpecialCharacter.COMMA;
+				nextCharIndex++;
+				return;
 			}
 			
 			if (isAlphabetical(nextChar)) {
@@ -187,6 +206,21 @@ public class TokenGenerator implements Iterator<Token> {
 			case "sqrt":
 				token = Function.SQRT;
 				break;
+			case "range":
+				token = Function.RANGE;
+				break;
+			case "sum":
+				token = Function.SUM;
+				break;
+			case "mean":
+				token = Function.MEAN;
+				break;
+			case "min":
+				token = Function.MIN;
+				break;
+			case "max":
+				token = Function.MAX;
+				break;
 			default: 
 				token = new calculator.token.Identifier(lexeme);
 				break;
@@ -198,8 +232,12 @@ public class TokenGenerator implements Iterator<Token> {
 	private class DecimalAfterPoint implements GeneratorState {
 		@Override
 		public void analyzeNextCharacter() {
-			if (isNumerical(input.charAt(nextCharIndex))) {
+			char nextChar = input.charAt(nextCharIndex);
+			if (isNumerical(nextChar)) {
 				nextCharIndex++;
+			} else if (isExponentMarker(nextChar) && input.charAt(nextCharIndex - 1) != '.') {
+				nextCharIndex++;
+				state = new ExponentStart();
 			} else {
 				buildToken();
 			}
@@ -208,7 +246,7 @@ public class TokenGenerator implements Iterator<Token> {
 		@Override
 		public void buildToken() {
 			if ('.' == input.charAt(nextCharIndex - 1)) {
-				throw new LexicalException(String.format("No digit after point at index %s", nextCharIndex - 1));
+				throw new LexicalException("No digit after point", nextCharIndex - 1);
 			}
 			String lexeme = input.substring(startIndex, nextCharIndex);
 			token = new Decimal(lexeme, Double.valueOf(lexeme));
@@ -220,10 +258,13 @@ public class TokenGenerator implements Iterator<Token> {
 		public void analyzeNextCharacter() {
 			char nextChar = input.charAt(nextCharIndex);
 			if (isNumerical(nextChar)) {
-				throw new LexicalException(String.format("0 at index %s cannot be fallowed by a digit", nextCharIndex));
+				throw new LexicalException("A leading 0 cannot be followed by a digit", nextCharIndex);
 			} else if (nextChar == '.') {
 				nextCharIndex++;
 				state = new DecimalAfterPoint();
+			} else if (isExponentMarker(nextChar)) {
+				nextCharIndex++;
+				state = new ExponentStart();
 			} else {
 				buildToken();
 			}
@@ -240,7 +281,10 @@ public class TokenGenerator implements Iterator<Token> {
 		@Override
 		public void analyzeNextCharacter() {
 			char nextChar = input.charAt(nextCharIndex);
-			if (isAlphabetical(nextChar)){
+			if (isExponentMarker(nextChar)) {
+				nextCharIndex++;
+				state = new ExponentStart();
+			} else if (isAlphabetical(nextChar)){
 				throw new LexicalException(nextCharIndex);
 			} else if (isNumerical(nextChar)) {
 				nextCharIndex++;
@@ -260,6 +304,54 @@ public class TokenGenerator implements Iterator<Token> {
 		}
 	}
 
+	/**
+	 * Exponent marker just read, expecting an optional sign or a digit.
+	 */
+	private class ExponentStart implements GeneratorState {
+		@Override
+		public void analyzeNextCharacter() {
+			char nextChar = input.charAt(nextCharIndex);
+			if (nextChar == '+' || nextChar == '-' || isNumerical(nextChar)) {
+				nextCharIndex++;
+				state = new ExponentDigits();
+			} else {
+				buildToken();
+			}
+		}
+
+		@Override
+		public void buildToken() {
+			throw new LexicalException("No digit in exponent", nextCharIndex);
+		}
+	}
+
+	private class ExponentDigits implements GeneratorState {
+		@Override
+		public void analyzeNextCharacter() {
+			char nextChar = input.charAt(nextCharIndex);
+			if (isNumerical(nextChar)) {
+				nextCharIndex++;
+			} else if (isAlphabetical(nextChar) || nextChar == '.') {
+				throw new LexicalException(nextCharIndex);
+			} else {
+				buildToken();
+			}
+		}
+
+		@Override
+		public void buildToken() {
+			if (!isNumerical(input.charAt(nextCharIndex - 1))) {
+				throw new LexicalException("No digit in exponent", nextCharIndex);
+			}
+			String lexeme = input.substring(startIndex, nextCharIndex);
+			token = new Decimal(lexeme, Double.valueOf(lexeme));
+		}
+	}
+
+	public static boolean isExponentMarker(char character) {
+		return character == 'e' || character == 'E';
+	}
+
 	public static boolean isAlphabetical(char character) {
 		if ((character >= 'a' && character <= 'z') || (character >= 'A' && character <= 'Z')) {
 			return true;
@@ -1,6 +1,7 @@
 package calculator;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import calculator.token.Token;
@@ -13,6 +14,11 @@ import calculator.token.Token;
 public class Tokenizer {
 
 	private final String input;
+	/**
+	 * input index of each analyzed token
+	 */
+	private int[] positions = new int[0];
+	private int count = 0;
 
 	public Tokenizer(String input) {
 		super();
@@ -20,10 +26,26 @@ public class Tokenizer {
 	}
 	
 	public List<Token> analyze(){
-		List<Token> tokens = new LinkedList<>();
+		List<Token> tokens = new ArrayList<>();
 		TokenGenerator generator = new TokenGenerator(input);
-		generator.forEachRemaining(tokens::add);
+		positions = new int[Math.max(Math.min(input.length(), 16), 1)];
+		count = 0;
+		while (generator.hasNext()) {
+			if (count == positions.length) {
+				positions = Arrays.copyOf(positions, count * 2);
+			}
+			positions[count++] = generator.position();
+			tokens.add(generator.next());
+		}
 		return tokens;
 	}
 
+	/**
+	 * @return input index of the token at {@code tokenIndex} in the analyzed
+	 *         list, the input length past the last token
+	 */
+	public int position(int tokenIndex) {
+		return tokenIndex < count ? positions[tokenIndex] : input.length();
+	}
+
 }
@@ -0,0 +1,248 @@
+package calculator.admission;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import calculator.admission.BudgetExceededException.Reason;
+
+/**
+ * Shares a calculator deployment between tenants by admitting expressions
+ * according to their {@link CostEstimate}.
+ * <p>
+ * An expression costing more than {@link #maxCost} is rejected at once.
+ * Otherwise, it takes its cost out of the capacity of its tenant for the
+ * duration of the evaluation. The static cost of an expression involving
+ * arrays is only a lower bound, such an expression takes {@link #maxCost},
+ * the most it may spend. When the tenant has too much work in flight,
+ * the call waits in a fair queue for at most {@link #queueTimeout}
+ * nanoseconds, then is rejected. Tenants do not share capacity, so a busy
+ * tenant cannot delay the others. Admitted expressions are evaluated under a
+ * {@link Budget} of {@link #maxCost} operations and {@link #timeout}
+ * nanoseconds.
+ * <p>
+ * Admissions, rejections by {@link Reason} and the distribution of the
+ * estimated costs are counted per tenant, see {@link #stats()}.
+ * <p>
+ * Thread-safe.
+ */
+public class AdmissionController {
+
+	/**
+	 * largest cost of a single call, also its operation budget
+	 */
+	public final long maxCost;
+	/**
+	 * cost admitted concurrently for each tenant
+	 */
+	public final int capacity;
+	/**
+	 * deadline of an evaluation, in nanoseconds
+	 */
+	public final long timeout;
+	/**
+	 * longest wait for capacity, in nanoseconds, 0 to reject at once
+	 */
+	public final long queueTimeout;
+
+	private final ConcurrentMap<String, Tenant> tenants = new ConcurrentHashMap<>();
+
+	/**
+	 * @param maxCost at most {@code capacity}
+	 * @param timeout {@link Long#MAX_VALUE} for no deadline
+	 */
+	public AdmissionController(long maxCost, int capacity, long timeout, long queueTimeout, TimeUnit unit) {
+		if (maxCost < 1 || maxCost > capacity) {
+			throw new IllegalArgumentException("maxCost must be between 1 and the capacity");
+		}
+		if (timeout < 0 || queueTimeout < 0) {
+			throw new IllegalArgumentException("timeouts must not be negative");
+		}
+		this.maxCost = maxCost;
+		this.capacity = capacity;
+		this.timeout = unit.toNanos(timeout);
+		this.queueTimeout = unit.toNanos(queueTimeout);
+	}
+
+	/**
+	 * Admit an expression, waiting for capacity if needed. The returned
+	 * ticket must be closed once the evaluation is over.
+	 *
+	 * @throws BudgetExceededException when the expression is rejected
+	 */
+	public Ticket admit(String tenant, CostEstimate estimate) {
+		Tenant counters = tenants.computeIfAbsent(tenant, name -> new Tenant(capacity));
+		counters.costs.incrementAndGet(bucket(estimate.cost));
+		if (estimate.cost > maxCost) {
+			counters.rejected(Reason.TOO_EXPENSIVE);
+			throw new BudgetExceededException(Reason.TOO_EXPENSIVE,
+					"Expression too expensive: cost " + estimate.cost + " > " + maxCost);
+		}
+		// free expressions still take a permit, so that they queue as well,
+		// array expressions their operation budget
+		int permits = (int) (estimate.arrays ? maxCost : Math.max(estimate.cost, 1));
+		boolean acquired;
+		try {
+			acquired = queueTimeout == 0 ? counters.permits.tryAcquire(permits)
+					: counters.permits.tryAcquire(permits, queueTimeout, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			acquired = false;
+		}
+		if (!acquired) {
+			counters.rejected(Reason.OVERLOADED);
+			throw new BudgetExceededException(Reason.OVERLOADED, "Tenant overloaded: " + tenant);
+		}
+		counters.admitted.increment();
+		return new Ticket(counters, permits, new Budget(maxCost, timeout, counters));
+	}
+
+	/**
+	 * @return a snapshot of the counters of each tenant, sorted by name
+	 */
+	public Map<String, Stats> stats() {
+		Map<String, Stats> stats = new TreeMap<>();
+		tenants.forEach((name, tenant) -> stats.put(name, tenant.stats(name)));
+		return stats;
+	}
+
+	/**
+	 * @return index of the power of two bucket holding {@code cost}
+	 */
+	static int bucket(long cost) {
+		return 64 - Long.numberOfLeadingZeros(cost);
+	}
+
+	/**
+	 * Capacity held by an admitted expression.
+	 */
+	public static final class Ticket implements AutoCloseable {
+		/**
+		 * budget the expression must be evaluated under
+		 */
+		public final Budget budget;
+
+		private final Tenant tenant;
+		private final int permits;
+		private boolean closed = false;
+
+		Ticket(Tenant tenant, int permits, Budget budget) {
+			this.tenant = tenant;
+			this.permits = permits;
+			this.budget = budget;
+		}
+
+		/**
+		 * Return the capacity to the tenant.
+		 */
+		@Override
+		public void close() {
+			if (!closed) {
+				closed = true;
+				tenant.permits.release(permits);
+			}
+		}
+	}
+
+	/**
+	 * Capacity and counters of a tenant.
+	 */
+	static final class Tenant {
+		final Semaphore permits;
+		final LongAdder admitted = new LongAdder();
+		final AtomicLongArray rejected = new AtomicLongArray(Reason.values().length);
+		final AtomicLongArray costs = new AtomicLongArray(64);
+
+		Tenant(int capacity) {
+			permits = new Semaphore(capacity, true);
+		}
+
+		void rejected(Reason reason) {
+			rejected.incrementAndGet(reason.ordinal());
+		}
+
+		Stats stats(String name) {
+			long[] rejections = new long[rejected.length()];
+			for (int i = 0; i < rejections.length; i++) {
+				rejections[i] = rejected.get(i);
+			}
+			long[] histogram = new long[costs.length()];
+			for (int i = 0; i < histogram.length; i++) {
+				histogram[i] = costs.get(i);
+			}
+			return new Stats(name, admitted.sum(), rejections, histogram, permits.availablePermits());
+		}
+	}
+
+	/**
+	 * Counters of a tenant. Admissions count expressions that passed
+	 * admission, some of which may have been rejected during evaluation.
+	 */
+	public static final class Stats {
+		public final String tenant;
+		public final long admitted;
+		/**
+		 * rejections indexed by {@link Reason#ordinal()}
+		 */
+		public final long[] rejected;
+		/**
+		 * estimated costs of all the expressions submitted: {@code costs[0]}
+		 * counts those of cost 0, {@code costs[k]} those of cost between
+		 * 2<sup>k-1</sup> and 2<sup>k</sup> excluded
+		 */
+		public final long[] costs;
+		/**
+		 * capacity left when the snapshot was taken
+		 */
+		public final int available;
+
+		Stats(String tenant, long admitted, long[] rejected, long[] costs, int available) {
+			this.tenant = tenant;
+			this.admitted = admitted;
+			this.rejected = rejected;
+			this.costs = costs;
+			this.available = available;
+		}
+
+		public long rejected(Reason reason) {
+			return rejected[reason.ordinal()];
+		}
+
+		/**
+		 * @param percentile between 0 and 100
+		 * @return upper bound of the bucket holding the requested percentile
+		 *         of the estimated costs, 0 when nothing was submitted
+		 */
+		public long costPercentile(double percentile) {
+			long total = 0;
+			for (long count : costs) {
+				total += count;
+			}
+			long rank = Math.max((long) Math.ceil(percentile / 100 * total), 1);
+			long seen = 0;
+			for (int k = 0; k < costs.length; k++) {
+				seen += costs[k];
+				if (seen >= rank) {
+					return k == 0 ? 0 : (1L << k) - 1;
+				}
+			}
+			return 0;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder builder = new StringBuilder(tenant).append(": ").append(admitted).append(" admitted");
+			for (Reason reason : Reason.values()) {
+				builder.append(", ").append(rejected(reason)).append(' ').append(reason.name().toLowerCase(Locale.ROOT));
+			}
+			return builder.append(", cost p50 ").append(costPercentile(50)).append(" p99 ")
+					.append(costPercentile(99)).toString();
+		}
+	}
+}
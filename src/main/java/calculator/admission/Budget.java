@@ -0,0 +1,91 @@
+package calculator.admission;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import calculator.admission.BudgetExceededException.Reason;
+
+/**
+ * Operations and time allowed to a single evaluation.
+ * <p>
+ * Scalar expressions are charged their static {@link CostEstimate#cost}
+ * before evaluation starts, so their evaluation loop only checks the deadline,
+ * every {@value #CHECK_INTERVAL} nodes. Array operations are charged as they
+ * run, in proportion to the number of elements they produce, and the
+ * numeric methods of {@link calculator.Calculator} on each sample.
+ * <p>
+ * Both {@link #charge} and {@link #checkDeadline()} may be called from any
+ * thread.
+ */
+public final class Budget {
+
+	/**
+	 * nodes evaluated between two deadline checks
+	 */
+	public static final int CHECK_INTERVAL = 1 << 12;
+
+	public final long operations;
+	/**
+	 * in nanoseconds from the creation of the budget, {@link Long#MAX_VALUE}
+	 * for no deadline
+	 */
+	public final long timeout;
+
+	private final long started = System.nanoTime();
+	private final AtomicLong spent = new AtomicLong();
+	/**
+	 * set once exceeded, so that a rejection is counted once even when
+	 * several threads of a parallel evaluation find out
+	 */
+	private final AtomicBoolean exceeded = new AtomicBoolean();
+	/**
+	 * counts the rejections, null for a budget created outside of a controller
+	 */
+	private final AdmissionController.Tenant tenant;
+
+	public Budget(long operations, long timeout, TimeUnit unit) {
+		this(operations, unit.toNanos(timeout), (AdmissionController.Tenant) null);
+	}
+
+	Budget(long operations, long timeout, AdmissionController.Tenant tenant) {
+		if (operations < 0 || timeout < 0) {
+			throw new IllegalArgumentException("budget must not be negative");
+		}
+		this.operations = operations;
+		this.timeout = timeout;
+		this.tenant = tenant;
+	}
+
+	/**
+	 * @throws BudgetExceededException when the operations spent so far exceed
+	 *             the budget or the deadline passed
+	 */
+	public void charge(long operations) {
+		long spent = this.spent.addAndGet(operations);
+		if (spent > this.operations) {
+			throw exceeded(Reason.OPERATIONS, "Operation budget exceeded: " + spent + " > " + this.operations);
+		}
+		checkDeadline();
+	}
+
+	/**
+	 * @throws BudgetExceededException when the deadline passed
+	 */
+	public void checkDeadline() {
+		if (timeout != Long.MAX_VALUE && System.nanoTime() - started > timeout) {
+			throw exceeded(Reason.DEADLINE, "Deadline exceeded: " + TimeUnit.NANOSECONDS.toMillis(timeout) + " ms");
+		}
+	}
+
+	public long spent() {
+		return spent.get();
+	}
+
+	private BudgetExceededException exceeded(Reason reason, String message) {
+		if (exceeded.compareAndSet(false, true) && tenant != null) {
+			tenant.rejected(reason);
+		}
+		return new BudgetExceededException(reason, message);
+	}
+}
@@ -0,0 +1,40 @@
+package calculator.admission;
+
+import calculator.EvaluationException;
+
+/**
+ * Thrown when an expression is rejected by an {@link AdmissionController}
+ * or runs out of its {@link Budget}. Bindings are left unchanged.
+ */
+public class BudgetExceededException extends EvaluationException {
+
+	private static final long serialVersionUID = 1L;
+
+	public static enum Reason {
+		/**
+		 * static cost above the limit of a single call, rejected before
+		 * evaluation
+		 */
+		TOO_EXPENSIVE,
+		/**
+		 * the tenant had no capacity left within the queueing timeout
+		 */
+		OVERLOADED,
+		/**
+		 * array operations, or the samples of an integration or root search,
+		 * exceeded the operation budget during evaluation
+		 */
+		OPERATIONS,
+		/**
+		 * the deadline passed during evaluation
+		 */
+		DEADLINE
+	}
+
+	public final Reason reason;
+
+	public BudgetExceededException(Reason reason, String message) {
+		super(message);
+		this.reason = reason;
+	}
+}
@@ -0,0 +1,65 @@
+package calculator.admission;
+
+import calculator.SyntaxTree;
+
+/**
+ * Static cost of a parsed expression, computed without evaluating it.
+ * <p>
+ * The cost of a scalar expression is the sum of the
+ * {@link SyntaxTree#weight(byte) weights} of its nodes, which is exactly what
+ * a {@link Budget} is charged when it is evaluated. Array operations are
+ * counted once here, their evaluation is charged per element.
+ */
+public final class CostEstimate {
+
+	/**
+	 * operators and operands, the tokens of the expression besides
+	 * parentheses, commas and bindings
+	 */
+	public final int nodes;
+	/**
+	 * nesting depth, 1 for a single number
+	 */
+	public final int depth;
+	public final long cost;
+	/**
+	 * whether the expression holds array literals or array functions, its
+	 * cost then being a lower bound
+	 */
+	public final boolean arrays;
+
+	public CostEstimate(int nodes, int depth, long cost, boolean arrays) {
+		this.nodes = nodes;
+		this.depth = depth;
+		this.cost = cost;
+		this.arrays = arrays;
+	}
+
+	public static CostEstimate of(SyntaxTree tree) {
+		// depth of the subtrees on the operand stack
+		int[] depths = new int[tree.maxStackDepth()];
+		int top = -1;
+		int nodes = 0;
+		int depth = 0;
+		for (int i = 0; i < tree.size(); i++) {
+			int arity = tree.arity(i);
+			if (tree.op(i) == SyntaxTree.ASSIGN) {
+				// binds its child without adding a level
+				continue;
+			}
+			int children = 0;
+			for (int child = 0; child < arity; child++) {
+				children = Math.max(children, depths[top--]);
+			}
+			depths[++top] = children + 1;
+			depth = Math.max(depth, children + 1);
+			nodes++;
+		}
+		return new CostEstimate(nodes, depth, tree.cost(tree.root()), tree.hasArrays());
+	}
+
+	@Override
+	public String toString() {
+		return "cost " + cost + (arrays ? "+" : "") + ", " + nodes + " nodes, depth " + depth;
+	}
+}
@@ -0,0 +1,404 @@
+package calculator.audit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import calculator.Diagnostic;
+import calculator.EvalResult;
+import calculator.EvaluationException;
+import calculator.LexicalException;
+import calculator.ParsingException;
+
+/**
+ * Audit trail of evaluated expressions, written into a memory-mapped ring
+ * file of fixed-size binary records.
+ * <p>
+ * Writers reserve a slot with an atomic increment and fill it with absolute
+ * puts into the mapping: recording neither blocks nor allocates, and the
+ * operating system writes dirty pages back in the background. Once
+ * {@link #capacity} records were written, new records overwrite the oldest
+ * ones.
+ * <p>
+ * File layout, little endian: a {@link #HEADER_SIZE} bytes header (magic,
+ * version, record size, capacity) followed by {@code capacity} records of
+ * {@link #RECORD_SIZE} bytes:
+ *
+ * <pre>
+ *  0 long   sequence + 1, 0 for an empty or incomplete slot, written last
+ *  8 long   timestamp, milliseconds since the epoch
+ * 16 long   session
+ * 24 double scalar value, element sum for arrays
+ * 32 int    error position, element count for arrays
+ * 36 byte   status, see STATUS_* constants
+ * 37 byte   entry point, see ENTRY_* constants
+ * 38 byte   flags, see FLAG_TRUNCATED
+ * 40 short  expression length in bytes
+ * 42 ...    expression, UTF-8, at most MAX_EXPRESSION_BYTES bytes
+ * </pre>
+ *
+ * Records are complete once {@link #close()} returned. Readers running
+ * concurrently with writers may miss the records being written.
+ */
+public final class AuditLog implements Closeable {
+
+	public static final int HEADER_SIZE = 64;
+	public static final int RECORD_SIZE = 256;
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	private static final int MAGIC = 0x43414C41;
+	private static final int VERSION = 1;
+
+	// record field offsets
+	private static final int SEQUENCE = 0;
+	private static final int TIMESTAMP = 8;
+	private static final int SESSION = 16;
+	private static final int VALUE = 24;
+	private static final int POSITION = 32;
+	private static final int STATUS = 36;
+	private static final int ENTRY = 37;
+	private static final int FLAGS = 38;
+	private static final int LENGTH = 40;
+	private static final int EXPRESSION = 42;
+
+	public static final int MAX_EXPRESSION_BYTES = RECORD_SIZE - EXPRESSION;
+
+	// statuses
+	public static final byte STATUS_SCALAR = 0;
+	public static final byte STATUS_ARRAY = 1;
+	public static final byte STATUS_EMPTY_INPUT = 2;
+	public static final byte STATUS_LEXICAL = 3;
+	public static final byte STATUS_PARSING = 4;
+	public static final byte STATUS_EVALUATION = 5;
+	/**
+	 * failure not reported by a calculator exception
+	 */
+	public static final byte STATUS_OTHER = 6;
+
+	// entry points, replay calls the same one
+	public static final byte ENTRY_EVAL = 0;
+	public static final byte ENTRY_EVAL_ARRAY = 1;
+	public static final byte ENTRY_TRY_EVAL = 2;
+	/**
+	 * removal of bindings, the expression holds the space separated names,
+	 * none for all, and the value the number of bindings removed
+	 */
+	public static final byte ENTRY_CLEAR = 3;
+	/**
+	 * the expression holds the space separated expression, variable and
+	 * bounds, the value is the integral
+	 */
+	public static final byte ENTRY_INTEGRATE = 4;
+	/**
+	 * the expression holds the space separated expression, variable and
+	 * bounds, the value is the root
+	 */
+	public static final byte ENTRY_SOLVE = 5;
+
+	/**
+	 * the expression did not fit the record and was cut at a character
+	 * boundary
+	 */
+	public static final byte FLAG_TRUNCATED = 1;
+
+	/**
+	 * number of records kept
+	 */
+	public final int capacity;
+
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+	private final AtomicLong sequence;
+
+	/**
+	 * Open the log at {@code file} with {@link #DEFAULT_CAPACITY}, see
+	 * {@link #AuditLog(Path, int)}.
+	 */
+	public AuditLog(Path file) throws IOException {
+		this(file, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Create the log, or reopen an existing one and append after its last
+	 * record. The capacity of an existing log is kept.
+	 *
+	 * @param capacity number of records kept in a new log
+	 */
+	public AuditLog(Path file, int capacity) throws IOException {
+		if (capacity < 1 || capacity > (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE) {
+			throw new IllegalArgumentException("capacity out of range: " + capacity);
+		}
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			if (channel.size() >= HEADER_SIZE) {
+				capacity = readHeader(channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE));
+			}
+			this.capacity = capacity;
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(4, VERSION);
+			buffer.putInt(8, RECORD_SIZE);
+			buffer.putInt(12, capacity);
+			long last = 0;
+			for (int slot = 0; slot < capacity; slot++) {
+				last = Math.max(last, buffer.getLong(offset(slot) + SEQUENCE));
+			}
+			sequence = new AtomicLong(last);
+		} catch (IOException | RuntimeException ex) {
+			channel.close();
+			throw ex;
+		}
+	}
+
+	/**
+	 * @return the capacity stored in the header
+	 */
+	private static int readHeader(MappedByteBuffer header) throws IOException {
+		header.order(ByteOrder.LITTLE_ENDIAN);
+		if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || header.getInt(8) != RECORD_SIZE) {
+			throw new IOException("not an audit log, or an incompatible version");
+		}
+		return header.getInt(12);
+	}
+
+	private static int offset(int slot) {
+		return HEADER_SIZE + slot * RECORD_SIZE;
+	}
+
+	public void record(long session, byte entry, String expression, EvalResult result) {
+		if (result.isArray()) {
+			record(session, entry, expression, result.array);
+		} else if (result.isSuccess()) {
+			record(session, entry, expression, result.value);
+		} else {
+			record(session, entry, expression, result.diagnostic);
+		}
+	}
+
+	public void record(long session, byte entry, String expression, double value) {
+		write(session, entry, expression, STATUS_SCALAR, 0, value);
+	}
+
+	public void record(long session, byte entry, String expression, double[] array) {
+		write(session, entry, expression, STATUS_ARRAY, array.length, sum(array));
+	}
+
+	public void record(long session, byte entry, String expression, Diagnostic diagnostic) {
+		write(session, entry, expression, status(diagnostic.kind), diagnostic.position, Double.NaN);
+	}
+
+	/**
+	 * Record an evaluation that threw {@code ex}.
+	 */
+	public void record(long session, byte entry, String expression, RuntimeException ex) {
+		write(session, entry, expression, status(expression, ex), position(ex), Double.NaN);
+	}
+
+	static byte status(Diagnostic.Kind kind) {
+		return (byte) (STATUS_EMPTY_INPUT + kind.ordinal());
+	}
+
+	static byte status(String expression, RuntimeException ex) {
+		if (ex instanceof LexicalException) {
+			return STATUS_LEXICAL;
+		} else if (ex instanceof ParsingException) {
+			return STATUS_PARSING;
+		} else if (ex instanceof EvaluationException) {
+			return STATUS_EVALUATION;
+		} else if (expression.isEmpty()) {
+			return STATUS_EMPTY_INPUT;
+		}
+		return STATUS_OTHER;
+	}
+
+	static int position(RuntimeException ex) {
+		if (ex instanceof LexicalException) {
+			return ((LexicalException) ex).position;
+		} else if (ex instanceof ParsingException) {
+			return ((ParsingException) ex).position;
+		} else if (ex instanceof EvaluationException) {
+			return ((EvaluationException) ex).position;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the sum of the elements, in index order so that replays
+	 *         compare bit for bit
+	 */
+	static double sum(double[] array) {
+		double sum = 0;
+		for (int i = 0; i < array.length; i++) {
+			sum += array[i];
+		}
+		return sum;
+	}
+
+	private void write(long session, byte entry, String expression, byte status, int position, double value) {
+		long reserved = sequence.getAndIncrement();
+		int base = offset((int) (reserved % capacity));
+		buffer.putLong(base + SEQUENCE, 0);
+		buffer.putLong(base + TIMESTAMP, System.currentTimeMillis());
+		buffer.putLong(base + SESSION, session);
+		buffer.putDouble(base + VALUE, value);
+		buffer.putInt(base + POSITION, position);
+		buffer.put(base + STATUS, status);
+		buffer.put(base + ENTRY, entry);
+
+		// UTF-8 encoding, without the intermediate array of String.getBytes
+		int length = 0;
+		byte flags = 0;
+		int at = base + EXPRESSION;
+		for (int i = 0; i < expression.length(); i++) {
+			char c = expression.charAt(i);
+			int codePoint = c;
+			int bytes;
+			if (c < 0x80) {
+				bytes = 1;
+			} else if (c < 0x800) {
+				bytes = 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < expression.length()
+					&& Character.isLowSurrogate(expression.charAt(i + 1))) {
+				codePoint = Character.toCodePoint(c, expression.charAt(i + 1));
+				bytes = 4;
+			} else {
+				bytes = 3;
+			}
+			if (length + bytes > MAX_EXPRESSION_BYTES) {
+				flags |= FLAG_TRUNCATED;
+				break;
+			}
+			if (bytes == 1) {
+				buffer.put(at + length, (byte) c);
+			} else if (bytes == 2) {
+				buffer.put(at + length, (byte) (0xC0 | c >> 6));
+				buffer.put(at + length + 1, (byte) (0x80 | c & 0x3F));
+			} else if (bytes == 3) {
+				buffer.put(at + length, (byte) (0xE0 | c >> 12));
+				buffer.put(at + length + 1, (byte) (0x80 | c >> 6 & 0x3F));
+				buffer.put(at + length + 2, (byte) (0x80 | c & 0x3F));
+			} else {
+				buffer.put(at + length, (byte) (0xF0 | codePoint >> 18));
+				buffer.put(at + length + 1, (byte) (0x80 | codePoint >> 12 & 0x3F));
+				buffer.put(at + length + 2, (byte) (0x80 | codePoint >> 6 & 0x3F));
+				buffer.put(at + length + 3, (byte) (0x80 | codePoint & 0x3F));
+				i++;
+			}
+			length += bytes;
+		}
+		buffer.put(base + FLAGS, flags);
+		buffer.putShort(base + LENGTH, (short) length);
+		buffer.putLong(base + SEQUENCE, reserved + 1);
+	}
+
+	/**
+	 * @return number of records written since the log was created, including
+	 *         the overwritten ones
+	 */
+	public long written() {
+		return sequence.get();
+	}
+
+	/**
+	 * Flush the mapping to the file and release it.
+	 */
+	@Override
+	public void close() throws IOException {
+		buffer.force();
+		channel.close();
+	}
+
+	/**
+	 * Audit record, as read back by {@link AuditLog#read(Path)}.
+	 */
+	public static class Record {
+		public final long sequence;
+		public final long timestamp;
+		public final long session;
+		public final byte status;
+		public final byte entry;
+		/**
+		 * error position, element count for arrays
+		 */
+		public final int position;
+		/**
+		 * scalar value, element sum for arrays
+		 */
+		public final double value;
+		public final String expression;
+		public final boolean truncated;
+
+		Record(long sequence, long timestamp, long session, byte status, byte entry, int position, double value,
+				String expression, boolean truncated) {
+			this.sequence = sequence;
+			this.timestamp = timestamp;
+			this.session = session;
+			this.status = status;
+			this.entry = entry;
+			this.position = position;
+			this.value = value;
+			this.expression = expression;
+			this.truncated = truncated;
+		}
+
+		public boolean isSuccess() {
+			return status == STATUS_SCALAR || status == STATUS_ARRAY;
+		}
+
+		@Override
+		public String toString() {
+			return "Record [sequence=" + sequence + ", session=" + session + ", status=" + status + ", entry="
+					+ entry + ", position=" + position + ", value=" + value + ", expression=" + expression
+					+ (truncated ? "..." : "") + "]";
+		}
+	}
+
+	/**
+	 * Read the complete records of a log, in sequence order.
+	 */
+	public static List<Record> read(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_SIZE) {
+				throw new IOException("not an audit log: " + file);
+			}
+			int capacity = readHeader(channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE));
+			long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+			if (channel.size() < size) {
+				throw new IOException("truncated audit log: " + file);
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			List<Record> records = new ArrayList<>();
+			byte[] bytes = new byte[MAX_EXPRESSION_BYTES];
+			for (int slot = 0; slot < capacity; slot++) {
+				int base = offset(slot);
+				long sequence = buffer.getLong(base + SEQUENCE);
+				if (sequence == 0) {
+					continue;
+				}
+				int length = Math.min(buffer.getShort(base + LENGTH), MAX_EXPRESSION_BYTES);
+				for (int i = 0; i < length; i++) {
+					bytes[i] = buffer.get(base + EXPRESSION + i);
+				}
+				records.add(new Record(sequence - 1, buffer.getLong(base + TIMESTAMP), buffer.getLong(base + SESSION),
+						buffer.get(base + STATUS), buffer.get(base + ENTRY), buffer.getInt(base + POSITION),
+						buffer.getDouble(base + VALUE), new String(bytes, 0, length, StandardCharsets.UTF_8),
+						(buffer.get(base + FLAGS) & FLAG_TRUNCATED) != 0));
+			}
+			Collections.sort(records, Comparator.comparingLong(record -> record.sequence));
+			return records;
+		}
+	}
+}
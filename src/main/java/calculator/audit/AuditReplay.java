@@ -0,0 +1,149 @@
+package calculator.audit;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import calculator.Calculator;
+import calculator.EvalResult;
+import calculator.audit.AuditLog.Record;
+
+/**
+ * Re-runs the expressions of an {@link AuditLog} through fresh
+ * {@link Calculator} instances and reports the records whose outcome
+ * differs. Launch with
+ * <p>
+ * <code>
+ *   java -cp target/classes calculator.audit.AuditReplay file
+ * </code>
+ * <p>
+ * Each session gets its own calculator and its records are replayed in
+ * sequence order through the entry point that evaluated them, so bindings
+ * evolve as in the original run, {@code :clear} commands included.
+ * Outcomes match when the statuses and error positions are equal and the
+ * values are equal bit for bit. Integrations are split according to the
+ * parallelism of the common pool, so they only replay bit for bit on a
+ * machine with as many processors.
+ * <p>
+ * Truncated expressions cannot be replayed and are reported. Once the ring
+ * wrapped, the first records of a session may be lost and later results
+ * relying on their bindings are reported as well.
+ */
+public class AuditReplay {
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 1) {
+			System.err.println("usage: calculator.audit.AuditReplay file");
+			System.exit(2);
+		}
+		PrintWriter out = new PrintWriter(System.out, true);
+		int differences = replay(AuditLog.read(Paths.get(args[0])), out);
+		System.exit(differences == 0 ? 0 : 1);
+	}
+
+	/**
+	 * @return the number of records reported
+	 */
+	public static int replay(List<Record> records, PrintWriter out) {
+		Map<Long, Calculator> sessions = new HashMap<>();
+		int differences = 0;
+		if (!records.isEmpty() && records.get(0).sequence > 0) {
+			out.printf("log wrapped, %d first records lost%n", records.get(0).sequence);
+		}
+		for (Record record : records) {
+			if (record.truncated) {
+				out.println("#" + record.sequence + " truncated expression, not replayed: " + record.expression);
+				differences++;
+				continue;
+			}
+			Calculator calc = sessions.computeIfAbsent(record.session, session -> new Calculator());
+			Outcome outcome = evaluate(calc, record);
+			if (!outcome.matches(record)) {
+				out.println("#" + record.sequence + " " + record.expression + ": logged " + describe(record.status,
+						record.position, record.value) + ", replayed " + outcome);
+				differences++;
+			}
+		}
+		out.printf("%d records replayed, %d differences%n", records.size(), differences);
+		return differences;
+	}
+
+	private static Outcome evaluate(Calculator calc, Record record) {
+		String expression = record.expression;
+		switch (record.entry) {
+		case AuditLog.ENTRY_EVAL:
+			try {
+				return new Outcome(AuditLog.STATUS_SCALAR, 0, calc.eval(expression));
+			} catch (RuntimeException ex) {
+				return new Outcome(AuditLog.status(expression, ex), AuditLog.position(ex), Double.NaN);
+			}
+		case AuditLog.ENTRY_EVAL_ARRAY:
+			try {
+				double[] array = calc.evalArray(expression);
+				return new Outcome(AuditLog.STATUS_ARRAY, array.length, AuditLog.sum(array));
+			} catch (RuntimeException ex) {
+				return new Outcome(AuditLog.status(expression, ex), AuditLog.position(ex), Double.NaN);
+			}
+		case AuditLog.ENTRY_CLEAR:
+			return new Outcome(AuditLog.STATUS_SCALAR, 0,
+					expression.isEmpty() ? calc.clear() : calc.clear(expression.split(" ")));
+		case AuditLog.ENTRY_INTEGRATE:
+		case AuditLog.ENTRY_SOLVE:
+			try {
+				String[] arguments = expression.split(" ");
+				double a = Double.parseDouble(arguments[2]);
+				double b = Double.parseDouble(arguments[3]);
+				double value = record.entry == AuditLog.ENTRY_INTEGRATE
+						? calc.integrate(arguments[0], arguments[1], a, b).value
+						: calc.solve(arguments[0], arguments[1], a, b).root;
+				return new Outcome(AuditLog.STATUS_SCALAR, 0, value);
+			} catch (RuntimeException ex) {
+				return new Outcome(AuditLog.status(expression, ex), AuditLog.position(ex), Double.NaN);
+			}
+		default:
+			EvalResult result = calc.tryEval(expression);
+			if (result.isArray()) {
+				return new Outcome(AuditLog.STATUS_ARRAY, result.array.length, AuditLog.sum(result.array));
+			} else if (result.isSuccess()) {
+				return new Outcome(AuditLog.STATUS_SCALAR, 0, result.value);
+			}
+			return new Outcome(AuditLog.status(result.diagnostic.kind), result.diagnostic.position, Double.NaN);
+		}
+	}
+
+	private static String describe(byte status, int position, double value) {
+		switch (status) {
+		case AuditLog.STATUS_SCALAR:
+			return String.valueOf(value);
+		case AuditLog.STATUS_ARRAY:
+			return "array of " + position + " elements summing to " + value;
+		default:
+			return "error " + status + " at index " + position;
+		}
+	}
+
+	private static class Outcome {
+		final byte status;
+		final int position;
+		final double value;
+
+		Outcome(byte status, int position, double value) {
+			this.status = status;
+			this.position = position;
+			this.value = value;
+		}
+
+		boolean matches(Record record) {
+			return status == record.status && position == record.position
+					&& Double.doubleToLongBits(value) == Double.doubleToLongBits(record.value);
+		}
+
+		@Override
+		public String toString() {
+			return describe(status, position, value);
+		}
+	}
+}
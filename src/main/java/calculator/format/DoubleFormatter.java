@@ -0,0 +1,493 @@
+package calculator.format;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Formats doubles into a reusable character buffer, without intermediate
+ * strings.
+ * <p>
+ * The decimal digits come from the Schubfach algorithm -- Raffaello
+ * Giulietti, "The Schubfach way to render doubles", 2020. It yields the
+ * shortest decimal that rounds back to the same double, picking the one
+ * closest to the exact binary value when several qualify. The table of
+ * 126-bit powers of ten it relies on is computed once when the class is
+ * loaded.
+ * <p>
+ * Three styles are supported:
+ * <ul>
+ * <li>{@link Style#SHORTEST}: the layout of {@link Double#toString(double)},
+ * e.g. {@code 0.1}, {@code 100.0}, {@code 1.0E-5}. Parsing the output with
+ * {@link Double#parseDouble} always gives back the formatted value.
+ * <li>{@link Style#FIXED}: {@code precision} digits after the decimal point,
+ * e.g. {@code 3.14} for a precision of 2.
+ * <li>{@link Style#SCIENTIFIC}: one digit before the decimal point and
+ * {@code precision} after it, followed by the exponent, e.g.
+ * {@code 3.14E0}.
+ * </ul>
+ * Fixed and scientific outputs round the shortest decimal half up, like
+ * {@link java.util.Formatter}.
+ * <p>
+ * Instances own their buffer and must not be shared between threads.
+ */
+public final class DoubleFormatter {
+
+	public static enum Style { SHORTEST, FIXED, SCIENTIFIC }
+
+	/**
+	 * longest output of the shortest style, {@code -2.2250738585072014E-308}
+	 */
+	public static final int MAX_SHORTEST_LENGTH = 24;
+
+	// binary64 layout
+	private static final int P = 53;
+	private static final int Q_MIN = -1074;
+	private static final long C_MIN = 1L << (P - 1);
+	private static final int BQ_MASK = 0x7FF;
+	private static final long T_MASK = C_MIN - 1;
+	/**
+	 * subnormal significands below this value need an extra digit
+	 */
+	private static final long C_TINY = 3;
+
+	// exponent range of the powers of ten table
+	private static final int K_MIN = -324;
+	private static final int K_MAX = 292;
+
+	private static final long MASK_63 = (1L << 63) - 1;
+
+	/**
+	 * number of digits of the decimal significands, after normalization
+	 */
+	private static final int H = 17;
+
+	private static final long[] POW10 = new long[19];
+
+	/**
+	 * g1, g0 pairs: for each k, 10^-k = beta 2^r with 2^125 <= beta < 2^126
+	 * and g = floor(beta) + 1 = g1 2^63 + g0
+	 */
+	private static final long[] G = new long[2 * (K_MAX - K_MIN + 1)];
+
+	static {
+		POW10[0] = 1;
+		for (int i = 1; i < POW10.length; i++) {
+			POW10[i] = POW10[i - 1] * 10;
+		}
+		for (int k = K_MIN; k <= K_MAX; k++) {
+			int e = -k;
+			int r = flog2pow10(e) - 125;
+			BigInteger beta;
+			if (e >= 0) {
+				BigInteger pow = BigInteger.TEN.pow(e);
+				beta = r >= 0 ? pow.shiftRight(r) : pow.shiftLeft(-r);
+			} else {
+				beta = BigInteger.ONE.shiftLeft(-r).divide(BigInteger.TEN.pow(-e));
+			}
+			BigInteger g = beta.add(BigInteger.ONE);
+			G[2 * (k - K_MIN)] = g.shiftRight(63).longValue();
+			G[2 * (k - K_MIN) + 1] = g.longValue() & MASK_63;
+		}
+	}
+
+	/**
+	 * largest fixed precision, enough for every digit of
+	 * {@link Double#MIN_VALUE}
+	 */
+	public static final int MAX_FIXED_PRECISION = 340;
+	/**
+	 * largest scientific precision, already more than the 17 significant
+	 * digits a double needs
+	 */
+	public static final int MAX_SCIENTIFIC_PRECISION = 17;
+
+	public final Style style;
+	/**
+	 * digits after the decimal point, ignored by the shortest style
+	 */
+	public final int precision;
+
+	private char[] buffer = new char[32];
+	private int length = 0;
+	/**
+	 * decimal digits of the last significand, most significant first
+	 */
+	private final char[] digits = new char[20];
+
+	// last decimal computed by decimal(): value = f 10^e
+	private long f;
+	private int e;
+
+	public DoubleFormatter() {
+		this(Style.SHORTEST, 0);
+	}
+
+	/**
+	 * @param precision from 0 to {@link #MAX_FIXED_PRECISION} or
+	 *            {@link #MAX_SCIENTIFIC_PRECISION}
+	 */
+	public DoubleFormatter(Style style, int precision) {
+		int max = style == Style.FIXED ? MAX_FIXED_PRECISION
+				: style == Style.SCIENTIFIC ? MAX_SCIENTIFIC_PRECISION : Integer.MAX_VALUE;
+		if (precision < 0 || precision > max) {
+			throw new IllegalArgumentException("precision must be between 0 and " + max);
+		}
+		this.style = style;
+		this.precision = precision;
+	}
+
+	/**
+	 * Format {@code value} into the buffer, replacing its previous content.
+	 *
+	 * @return this formatter, to write the result out
+	 */
+	public DoubleFormatter format(double value) {
+		length = 0;
+		ensureCapacity(MAX_SHORTEST_LENGTH);
+		if (Double.isNaN(value)) {
+			append("NaN");
+			return this;
+		}
+		if (Double.doubleToRawLongBits(value) < 0) {
+			buffer[length++] = '-';
+		}
+		if (Double.isInfinite(value)) {
+			append("Infinity");
+			return this;
+		}
+		decimal(value);
+		switch (style) {
+		case SHORTEST:
+			shortest();
+			break;
+		case FIXED:
+			fixed();
+			break;
+		case SCIENTIFIC:
+			scientific();
+			break;
+		}
+		return this;
+	}
+
+	/**
+	 * @return the buffer holding the last formatted value in its first
+	 *         {@link #length()} characters
+	 */
+	public char[] buffer() {
+		return buffer;
+	}
+
+	public int length() {
+		return length;
+	}
+
+	public void writeTo(Writer out) throws IOException {
+		out.write(buffer, 0, length);
+	}
+
+	public StringBuilder appendTo(StringBuilder builder) {
+		return builder.append(buffer, 0, length);
+	}
+
+	@Override
+	public String toString() {
+		return new String(buffer, 0, length);
+	}
+
+	/**
+	 * Compute the shortest decimal {@code f 10^e} of a finite value, see
+	 * {@code jdk.internal.math.DoubleToDecimal}.
+	 */
+	private void decimal(double value) {
+		long bits = Double.doubleToRawLongBits(value);
+		long t = bits & T_MASK;
+		int bq = (int) (bits >>> (P - 1)) & BQ_MASK;
+		if (bq != 0) {
+			// normal
+			int mq = -Q_MIN + 1 - bq;
+			long c = C_MIN | t;
+			if (0 < mq && mq < P) {
+				// integers are their own shortest decimal
+				long integer = c >> mq;
+				if (integer << mq == c) {
+					f = integer;
+					e = 0;
+					return;
+				}
+			}
+			decimal(-mq, c, 0);
+		} else if (t != 0) {
+			// subnormal
+			if (t < C_TINY) {
+				decimal(Q_MIN, 10 * t, -1);
+			} else {
+				decimal(Q_MIN, t, 0);
+			}
+		} else {
+			f = 0;
+			e = 0;
+		}
+	}
+
+	/**
+	 * @param q binary exponent of the value {@code c 2^q}
+	 * @param dk decimal exponent correction of a scaled {@code c}
+	 */
+	private void decimal(int q, long c, int dk) {
+		int out = (int) c & 0x1;
+		long cb = c << 2;
+		long cbr = cb + 2;
+		long cbl;
+		int k;
+		if (c != C_MIN || q == Q_MIN) {
+			cbl = cb - 2;
+			k = flog10pow2(q);
+		} else {
+			// the gap below a power of two is half the gap above it
+			cbl = cb - 1;
+			k = flog10threeQuartersPow2(q);
+		}
+		int h = q + flog2pow10(-k) + 2;
+		long g1 = G[2 * (k - K_MIN)];
+		long g0 = G[2 * (k - K_MIN) + 1];
+
+		long vb = rop(g1, g0, cb << h);
+		long vbl = rop(g1, g0, cbl << h);
+		long vbr = rop(g1, g0, cbr << h);
+
+		long s = vb >> 2;
+		if (s >= 100) {
+			// try one digit less
+			long sp10 = s / 10 * 10;
+			long tp10 = sp10 + 10;
+			boolean upin = vbl + out <= sp10 << 2;
+			boolean wpin = (tp10 << 2) + out <= vbr;
+			if (upin != wpin) {
+				f = upin ? sp10 : tp10;
+				e = k + dk;
+				return;
+			}
+		}
+		long t = s + 1;
+		boolean uin = vbl + out <= s << 2;
+		boolean win = (t << 2) + out <= vbr;
+		if (uin != win) {
+			f = uin ? s : t;
+		} else {
+			// both or none in the rounding interval: pick the closest
+			long cmp = vb - (s + t << 1);
+			f = cmp < 0 || cmp == 0 && (s & 0x1) == 0 ? s : t;
+		}
+		e = k + dk;
+	}
+
+	/**
+	 * @return {@code g cp 2^-127} rounded to odd, g being {@code g1 2^63 + g0}
+	 */
+	private static long rop(long g1, long g0, long cp) {
+		long x1 = multiplyHigh(g0, cp);
+		long y0 = g1 * cp;
+		long y1 = multiplyHigh(g1, cp);
+		long z = (y0 >>> 1) + x1;
+		long vbp = y1 + (z >>> 63);
+		return vbp | (z & MASK_63) + MASK_63 >>> 63;
+	}
+
+	/**
+	 * @return the high 64 bits of the 128-bit product, Math.multiplyHigh
+	 *         being unavailable before Java 9
+	 */
+	private static long multiplyHigh(long x, long y) {
+		long x1 = x >> 32;
+		long x2 = x & 0xFFFFFFFFL;
+		long y1 = y >> 32;
+		long y2 = y & 0xFFFFFFFFL;
+		long z2 = x2 * y2;
+		long t = x1 * y2 + (z2 >>> 32);
+		long z1 = t & 0xFFFFFFFFL;
+		long z0 = t >> 32;
+		z1 += x2 * y1;
+		return x1 * y1 + z0 + (z1 >> 32);
+	}
+
+	/**
+	 * @return floor(e log10(2))
+	 */
+	private static int flog10pow2(int e) {
+		return (int) (e * 661_971_961_083L >> 41);
+	}
+
+	/**
+	 * @return floor(e log10(2) + log10(3/4))
+	 */
+	private static int flog10threeQuartersPow2(int e) {
+		return (int) (e * 661_971_961_083L + -274_743_187_321L >> 41);
+	}
+
+	/**
+	 * @return floor(e log2(10))
+	 */
+	private static int flog2pow10(int e) {
+		return (int) (e * 913_124_641_741L >> 38);
+	}
+
+	/**
+	 * Layout of {@link Double#toString(double)}: plain notation from 10^-3
+	 * included to 10^7 excluded, computerized scientific notation otherwise.
+	 */
+	private void shortest() {
+		int count = significand(f);
+		// value = 0.d1d2... 10^exponent
+		int exponent = e + count;
+		while (count > 1 && digits[count - 1] == '0') {
+			count--;
+		}
+		if (f == 0) {
+			append("0.0");
+		} else if (0 < exponent && exponent <= 7) {
+			for (int i = 0; i < exponent; i++) {
+				buffer[length++] = i < count ? digits[i] : '0';
+			}
+			buffer[length++] = '.';
+			if (count <= exponent) {
+				buffer[length++] = '0';
+			} else {
+				for (int i = exponent; i < count; i++) {
+					buffer[length++] = digits[i];
+				}
+			}
+		} else if (-3 < exponent && exponent <= 0) {
+			buffer[length++] = '0';
+			buffer[length++] = '.';
+			for (int i = exponent; i < 0; i++) {
+				buffer[length++] = '0';
+			}
+			for (int i = 0; i < count; i++) {
+				buffer[length++] = digits[i];
+			}
+		} else {
+			buffer[length++] = digits[0];
+			buffer[length++] = '.';
+			if (count == 1) {
+				buffer[length++] = '0';
+			} else {
+				for (int i = 1; i < count; i++) {
+					buffer[length++] = digits[i];
+				}
+			}
+			buffer[length++] = 'E';
+			exponent(exponent - 1);
+		}
+	}
+
+	private void fixed() {
+		// value rounded to 10^-precision is n 10^-precision, n = significand
+		// followed by zeros zeros
+		long n;
+		int zeros;
+		int shift = e + precision;
+		if (shift >= 0) {
+			n = f;
+			zeros = shift;
+		} else if (-shift >= POW10.length) {
+			// f < 10^17, the value rounds to zero
+			n = 0;
+			zeros = 0;
+		} else {
+			long pow = POW10[-shift];
+			n = f / pow;
+			if (2 * (f % pow) >= pow) {
+				n++;
+			}
+			zeros = 0;
+		}
+		int count = significand(n);
+		int total = count + zeros;
+		int width = Math.max(total, precision + 1);
+		int leading = width - total;
+		ensureCapacity(length + width + 1);
+		for (int i = 0; i < width; i++) {
+			if (i == width - precision) {
+				buffer[length++] = '.';
+			}
+			int digit = i - leading;
+			buffer[length++] = i < leading || digit >= count ? '0' : digits[digit];
+		}
+	}
+
+	private void scientific() {
+		int count = significand(f);
+		int exponent = e + count - 1;
+		int wanted = precision + 1;
+		if (f != 0 && count > wanted) {
+			int drop = count - wanted;
+			long pow = POW10[drop];
+			long n = f / pow;
+			if (2 * (f % pow) >= pow) {
+				n++;
+			}
+			count = significand(n);
+			if (count > wanted) {
+				// rounded up to the next power of ten
+				count = wanted;
+				exponent++;
+			}
+		}
+		ensureCapacity(length + wanted + 8);
+		buffer[length++] = digits[0];
+		if (precision > 0) {
+			buffer[length++] = '.';
+			for (int i = 1; i < wanted; i++) {
+				buffer[length++] = i < count ? digits[i] : '0';
+			}
+		}
+		buffer[length++] = 'E';
+		exponent(f == 0 ? 0 : exponent);
+	}
+
+	/**
+	 * Write the decimal digits of {@code n} into {@link #digits}.
+	 *
+	 * @return the number of digits
+	 */
+	private int significand(long n) {
+		int count = n == 0 ? 1 : 0;
+		for (long m = n; m != 0; m /= 10) {
+			count++;
+		}
+		for (int i = count - 1; i >= 0; i--) {
+			digits[i] = (char) ('0' + n % 10);
+			n /= 10;
+		}
+		return count;
+	}
+
+	private void exponent(int exponent) {
+		if (exponent < 0) {
+			buffer[length++] = '-';
+			exponent = -exponent;
+		}
+		if (exponent >= 100) {
+			buffer[length++] = (char) ('0' + exponent / 100);
+		}
+		if (exponent >= 10) {
+			buffer[length++] = (char) ('0' + exponent / 10 % 10);
+		}
+		buffer[length++] = (char) ('0' + exponent % 10);
+	}
+
+	private void append(String s) {
+		for (int i = 0; i < s.length(); i++) {
+			buffer[length++] = s.charAt(i);
+		}
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+		}
+	}
+}
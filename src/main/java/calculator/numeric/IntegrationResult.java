@@ -0,0 +1,47 @@
+package calculator.numeric;
+
+/**
+ * Outcome of a numerical integration, see {@link Integrator}.
+ */
+public class IntegrationResult {
+
+	/**
+	 * approximated integral
+	 */
+	public final double value;
+	/**
+	 * estimated absolute error of {@link #value}
+	 */
+	public final double errorEstimate;
+	/**
+	 * number of integrand evaluations
+	 */
+	public final long evaluations;
+	/**
+	 * false when the recursion depth limit was hit before reaching the
+	 * requested tolerance on some sub-interval
+	 */
+	public final boolean converged;
+
+	public IntegrationResult(double value, double errorEstimate, long evaluations, boolean converged) {
+		this.value = value;
+		this.errorEstimate = errorEstimate;
+		this.evaluations = evaluations;
+		this.converged = converged;
+	}
+
+	IntegrationResult negate() {
+		return new IntegrationResult(-value, errorEstimate, evaluations, converged);
+	}
+
+	IntegrationResult plus(IntegrationResult other) {
+		return new IntegrationResult(value + other.value, errorEstimate + other.errorEstimate,
+				evaluations + other.evaluations, converged && other.converged);
+	}
+
+	@Override
+	public String toString() {
+		return value + " (error estimate " + errorEstimate + ", " + evaluations + " evaluations"
+				+ (converged ? "" : ", tolerance not reached") + ")";
+	}
+}
@@ -0,0 +1,171 @@
+package calculator.numeric;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleUnaryOperator;
+
+import calculator.EvaluationException;
+
+/**
+ * Adaptive Simpson quadrature --
+ * https://en.wikipedia.org/wiki/Adaptive_Simpson%27s_method
+ * <p>
+ * The interval is halved recursively into fork-join tasks, each half
+ * receiving half of the tolerance, until there are about four segments per
+ * thread of the pool. Segments are then integrated sequentially, the
+ * Simpson error estimate deciding any further subdivision, so the work
+ * depends on the integrand rather than on the width of the interval.
+ * <p>
+ * The integrand must be safe to call from several threads at once.
+ */
+public class Integrator {
+
+	public static final double DEFAULT_TOLERANCE = 1e-10;
+	public static final int DEFAULT_MAX_DEPTH = 50;
+	public static final long DEFAULT_MAX_EVALUATIONS = 1 << 22;
+
+	private final double tolerance;
+	private final int maxDepth;
+	private final long maxEvaluations;
+	private final ForkJoinPool pool;
+	/**
+	 * number of halvings into fork-join tasks, log2 of about four segments
+	 * per thread
+	 */
+	private final int splitDepth;
+
+	public Integrator() {
+		this(DEFAULT_TOLERANCE, DEFAULT_MAX_DEPTH, DEFAULT_MAX_EVALUATIONS, ForkJoinPool.commonPool());
+	}
+
+	public Integrator(double tolerance) {
+		this(tolerance, DEFAULT_MAX_DEPTH, DEFAULT_MAX_EVALUATIONS, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param tolerance requested absolute error over the whole interval
+	 * @param maxDepth bisection depth limit of the sequential Simpson recursion
+	 * @param maxEvaluations limit of integrand evaluations of a single
+	 *            integration
+	 * @param pool pool running the split segments
+	 */
+	public Integrator(double tolerance, int maxDepth, long maxEvaluations, ForkJoinPool pool) {
+		if (!(tolerance > 0) || maxDepth < 1 || maxEvaluations < 1) {
+			throw new IllegalArgumentException("tolerance, depth and evaluation limit must be positive");
+		}
+		this.tolerance = tolerance;
+		this.maxDepth = maxDepth;
+		this.maxEvaluations = maxEvaluations;
+		this.pool = pool;
+		this.splitDepth = 32 - Integer.numberOfLeadingZeros(4 * pool.getParallelism() - 1);
+	}
+
+	/**
+	 * Integrate {@code f} from {@code a} to {@code b}. Reversed bounds give
+	 * the opposite value.
+	 *
+	 * @throws EvaluationException when the evaluation limit is reached
+	 */
+	public IntegrationResult integrate(DoubleUnaryOperator f, double a, double b) {
+		if (Double.isNaN(a) || Double.isNaN(b) || Double.isInfinite(a) || Double.isInfinite(b)) {
+			throw new IllegalArgumentException("Integration bounds must be finite");
+		}
+		if (a == b) {
+			return new IntegrationResult(0, 0, 0, true);
+		} else if (a > b) {
+			return integrate(f, b, a).negate();
+		}
+		return pool.invoke(new Segment(f, a, b, tolerance, splitDepth, new AtomicLong(maxEvaluations)));
+	}
+
+	private class Segment extends RecursiveTask<IntegrationResult> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final DoubleUnaryOperator f;
+		private final double a;
+		private final double b;
+		private final double eps;
+		/**
+		 * remaining halvings into fork-join tasks
+		 */
+		private final int splits;
+		/**
+		 * evaluations left to the whole integration, shared by its segments
+		 */
+		private final AtomicLong remaining;
+
+		/**
+		 * sequential integration state, local to the running task
+		 */
+		private long evaluations = 0;
+		private double error = 0;
+		private boolean converged = true;
+
+		Segment(DoubleUnaryOperator f, double a, double b, double eps, int splits, AtomicLong remaining) {
+			this.f = f;
+			this.a = a;
+			this.b = b;
+			this.eps = eps;
+			this.splits = splits;
+			this.remaining = remaining;
+		}
+
+		@Override
+		protected IntegrationResult compute() {
+			double m = a + (b - a) / 2;
+			if (splits > 0 && m > a && m < b) {
+				Segment left = new Segment(f, a, m, eps / 2, splits - 1, remaining);
+				Segment right = new Segment(f, m, b, eps / 2, splits - 1, remaining);
+				left.fork();
+				IntegrationResult rightResult = right.compute();
+				return left.join().plus(rightResult);
+			}
+
+			spend(3);
+			double fa = f.applyAsDouble(a);
+			double fm = f.applyAsDouble(m);
+			double fb = f.applyAsDouble(b);
+			double whole = (b - a) / 6 * (fa + 4 * fm + fb);
+			double value = adapt(a, fa, m, fm, b, fb, whole, eps, maxDepth);
+			return new IntegrationResult(value, error, evaluations, converged);
+		}
+
+		/**
+		 * Compare Simpson's rule on [a, b] with the sum over both halves,
+		 * recurse on the halves while the difference exceeds the tolerance.
+		 */
+		private double adapt(double a, double fa, double m, double fm, double b, double fb, double whole,
+				double eps, int depth) {
+			double lm = a + (m - a) / 2;
+			double rm = m + (b - m) / 2;
+			spend(2);
+			double flm = f.applyAsDouble(lm);
+			double frm = f.applyAsDouble(rm);
+			double left = (m - a) / 6 * (fa + 4 * flm + fm);
+			double right = (b - m) / 6 * (fm + 4 * frm + fb);
+			double delta = left + right - whole;
+
+			if (Math.abs(delta) <= 15 * eps) {
+				error += Math.abs(delta) / 15;
+				return left + right + delta / 15;
+			}
+			if (depth <= 0 || !(lm > a && rm < b)) {
+				// interval cannot be bisected further
+				converged = false;
+				error += Math.abs(delta) / 15;
+				return left + right + delta / 15;
+			}
+			return adapt(a, fa, lm, flm, m, fm, left, eps / 2, depth - 1)
+					+ adapt(m, fm, rm, frm, b, fb, right, eps / 2, depth - 1);
+		}
+
+		private void spend(int count) {
+			if (remaining.addAndGet(-count) < 0) {
+				throw new EvaluationException("Integration exceeded " + maxEvaluations + " evaluations");
+			}
+			evaluations += count;
+		}
+	}
+}
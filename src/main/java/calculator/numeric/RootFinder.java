@@ -0,0 +1,125 @@
+package calculator.numeric;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Brent's method -- https://en.wikipedia.org/wiki/Brent%27s_method
+ * <p>
+ * Finds a root of a continuous function within an interval whose bounds
+ * have function values of opposite sign. Each step tries inverse quadratic
+ * interpolation or the secant method and falls back to bisection whenever
+ * the interpolated point does not shrink the bracket fast enough.
+ */
+public class RootFinder {
+
+	public static final double DEFAULT_TOLERANCE = 1e-12;
+	public static final int DEFAULT_MAX_ITERATIONS = 200;
+
+	private static final double MACHINE_EPSILON = Math.ulp(1.0);
+
+	private final double tolerance;
+	private final int maxIterations;
+
+	public RootFinder() {
+		this(DEFAULT_TOLERANCE, DEFAULT_MAX_ITERATIONS);
+	}
+
+	/**
+	 * @param tolerance requested absolute accuracy of the root
+	 * @param maxIterations iteration limit
+	 */
+	public RootFinder(double tolerance, int maxIterations) {
+		if (!(tolerance > 0) || maxIterations < 1) {
+			throw new IllegalArgumentException("tolerance and iteration limit must be positive");
+		}
+		this.tolerance = tolerance;
+		this.maxIterations = maxIterations;
+	}
+
+	/**
+	 * Find a root of {@code f} between {@code lo} and {@code hi}.
+	 *
+	 * @throws IllegalArgumentException when {@code f(lo)} and {@code f(hi)}
+	 *             have the same sign
+	 */
+	public RootResult solve(DoubleUnaryOperator f, double lo, double hi) {
+		double a = lo;
+		double b = hi;
+		double fa = f.applyAsDouble(a);
+		double fb = f.applyAsDouble(b);
+		long evaluations = 2;
+
+		if (fa == 0) {
+			return new RootResult(a, fa, evaluations, true);
+		} else if (fb == 0) {
+			return new RootResult(b, fb, evaluations, true);
+		} else if (Double.isNaN(fa) || Double.isNaN(fb) || (fa > 0) == (fb > 0)) {
+			throw new IllegalArgumentException(
+					String.format("Root is not bracketed: f(%s) = %s and f(%s) = %s", lo, fa, hi, fb));
+		}
+
+		double c = b;
+		double fc = fb;
+		double d = b - a;
+		double e = d;
+		for (int i = 0; i < maxIterations; i++) {
+			if ((fb > 0) == (fc > 0)) {
+				// keep the root between b and c
+				c = a;
+				fc = fa;
+				d = b - a;
+				e = d;
+			}
+			if (Math.abs(fc) < Math.abs(fb)) {
+				// b is the best estimate so far
+				a = b;
+				b = c;
+				c = a;
+				fa = fb;
+				fb = fc;
+				fc = fa;
+			}
+			double tol = 2 * MACHINE_EPSILON * Math.abs(b) + tolerance / 2;
+			double xm = (c - b) / 2;
+			if (Math.abs(xm) <= tol || fb == 0) {
+				return new RootResult(b, fb, evaluations, true);
+			}
+			if (Math.abs(e) >= tol && Math.abs(fa) > Math.abs(fb)) {
+				double s = fb / fa;
+				double p;
+				double q;
+				if (a == c) {
+					// secant
+					p = 2 * xm * s;
+					q = 1 - s;
+				} else {
+					// inverse quadratic interpolation
+					double r = fb / fc;
+					q = fa / fc;
+					p = s * (2 * xm * q * (q - r) - (b - a) * (r - 1));
+					q = (q - 1) * (r - 1) * (s - 1);
+				}
+				if (p > 0) {
+					q = -q;
+				}
+				p = Math.abs(p);
+				if (2 * p < Math.min(3 * xm * q - Math.abs(tol * q), Math.abs(e * q))) {
+					e = d;
+					d = p / q;
+				} else {
+					d = xm;
+					e = d;
+				}
+			} else {
+				d = xm;
+				e = d;
+			}
+			a = b;
+			fa = fb;
+			b += Math.abs(d) > tol ? d : Math.copySign(tol, xm);
+			fb = f.applyAsDouble(b);
+			evaluations++;
+		}
+		return new RootResult(b, fb, evaluations, false);
+	}
+}
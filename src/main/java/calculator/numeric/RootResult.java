@@ -0,0 +1,38 @@
+package calculator.numeric;
+
+/**
+ * Outcome of a bracketed root search, see {@link RootFinder}.
+ */
+public class RootResult {
+
+	/**
+	 * approximated root
+	 */
+	public final double root;
+	/**
+	 * function value at {@link #root}
+	 */
+	public final double residual;
+	/**
+	 * number of function evaluations
+	 */
+	public final long evaluations;
+	/**
+	 * false when the iteration limit was hit before reaching the requested
+	 * tolerance
+	 */
+	public final boolean converged;
+
+	public RootResult(double root, double residual, long evaluations, boolean converged) {
+		this.root = root;
+		this.residual = residual;
+		this.evaluations = evaluations;
+		this.converged = converged;
+	}
+
+	@Override
+	public String toString() {
+		return root + " (residual " + residual + ", " + evaluations + " evaluations"
+				+ (converged ? "" : ", tolerance not reached") + ")";
+	}
+}
@@ -5,7 +5,7 @@ public class Decimal extends Token {
 	public final double value;
 
 	public Decimal(String lexeme, double value) {
-		super(lexeme);
+		super(lexeme, TokenKind.NUMBER);
 		this.value = value;
 	}
 }
@@ -1,14 +1,32 @@
 package calculator.token;
 
+import calculator.SyntaxTree;
 
 public class Function extends Token {
 
-	public static final Function COS = new Function("cos");
-	public static final Function SIN = new Function("sin");
-	public static final Function SQRT = new Function("sqrt");
-	public static final Function LOG = new Function("log");
+	public static final Function COS = new Function("cos", 1, SyntaxTree.COS);
+	public static final Function SIN = new Function("sin", 1, SyntaxTree.SIN);
+	public static final Function SQRT = new Function("sqrt", 1, SyntaxTree.SQRT);
+	public static final Function LOG = new Function("log", 1, SyntaxTree.LOG);
+
+	public static final Function RANGE = new Function("range", 3, SyntaxTree.RANGE);
+	public static final Function SUM = new Function("sum", 1, SyntaxTree.SUM);
+	public static final Function MEAN = new Function("mean", 1, SyntaxTree.MEAN);
+	public static final Function MIN = new Function("min", 1, SyntaxTree.MIN);
+	public static final Function MAX = new Function("max", 1, SyntaxTree.MAX);
 	
-	public Function(String lexeme) {
-		super(lexeme);
+	/**
+	 * number of arguments
+	 */
+	public final int arity;
+	/**
+	 * {@link SyntaxTree} node opcode of a call
+	 */
+	public final byte opcode;
+
+	public Function(String lexeme, int arity, byte opcode) {
+		super(lexeme, TokenKind.FUNCTION);
+		this.arity = arity;
+		this.opcode = opcode;
 	}
 }
@@ -3,6 +3,6 @@ package calculator.token;
 public class Identifier extends Token {
 
 	public Identifier(String lexeme) {
-		super(lexeme);
+		super(lexeme, TokenKind.IDENTIFIER);
 	}
 }
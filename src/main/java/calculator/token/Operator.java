@@ -1,16 +1,29 @@
 package calculator.token;
 
+import calculator.SyntaxTree;
+
 public class Operator extends Token {
 
-	public static final Operator SUBSTRACTION = new Operator("-", 0); 
-	public static final Operator MULTIPLICATION = new Operator("*", 1); 
-	public static final Operator ADDITION = new Operator("+",  0);
-	public static final Operator DIVISION = new Operator("/", 1); 
+	public static final Operator SUBSTRACTION = new Operator("-", 0, SyntaxTree.SUB, SyntaxTree.NEG); 
+	public static final Operator MULTIPLICATION = new Operator("*", 1, SyntaxTree.MUL, SyntaxTree.NONE); 
+	public static final Operator ADDITION = new Operator("+",  0, SyntaxTree.ADD, SyntaxTree.NONE);
+	public static final Operator DIVISION = new Operator("/", 1, SyntaxTree.DIV, SyntaxTree.NONE); 
 
 	public final int precedence;
+	/**
+	 * {@link SyntaxTree} node opcode of the binary operation
+	 */
+	public final byte opcode;
+	/**
+	 * {@link SyntaxTree} node opcode when used as a prefix operator,
+	 * {@link SyntaxTree#NONE} when not allowed
+	 */
+	public final byte prefixOpcode;
 
-	public Operator(String lexeme, int precedence) {
-		super(lexeme);
+	public Operator(String lexeme, int precedence, byte opcode, byte prefixOpcode) {
+		super(lexeme, TokenKind.OPERATOR);
 		this.precedence = precedence;
+		this.opcode = opcode;
+		this.prefixOpcode = prefixOpcode;
 	}
 }
@@ -2,12 +2,15 @@ package calculator.token;
 
 public class SpecialCharacter extends Token {
 
-	public static final SpecialCharacter LEFT_PAREN = new SpecialCharacter("("); 
-	public static final SpecialCharacter RIGHT_PAREN = new SpecialCharacter(")"); 
-	public static final SpecialCharacter BINDING = new SpecialCharacter("="); 
+	public static final SpecialCharacter LEFT_PAREN = new SpecialCharacter("(", TokenKind.LEFT_PAREN); 
+	public static final SpecialCharacter RIGHT_PAREN = new SpecialCharacter(")", TokenKind.RIGHT_PAREN); 
+	public static final SpecialCharacter BINDING = new SpecialCharacter("=", TokenKind.BINDING); 
+	public static final SpecialCharacter LEFT_BRACKET = new SpecialCharacter("[", TokenKind.LEFT_BRACKET); 
+	public static final SpecialCharacter RIGHT_BRACKET = new SpecialCharacter("]", TokenKind.RIGHT_BRACKET); 
+	public static final SpecialCharacter COMMA = new SpecialCharacter(",", TokenKind.COMMA); 
 	
-	public SpecialCharacter(String lexeme) {
-		super(lexeme);
+	public SpecialCharacter(String lexeme, TokenKind kind) {
+		super(lexeme, kind);
 	}
 	
 }
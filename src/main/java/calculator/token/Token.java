@@ -1,9 +1,9 @@
 package calculator.token;
 
-import calculator.Evaluator;
+import calculator.Parser;
 
 /**
- * Lexical unit the {@link Evaluator} can parse
+ * Lexical unit the {@link Parser} can parse
  */
 public class Token {
 
@@ -11,9 +11,14 @@ public class Token {
 	 * token original string
 	 */
 	public final String lexeme;
+	/**
+	 * token category, drives the parser dispatch
+	 */
+	public final TokenKind kind;
 	
-	public Token(String lexeme) {
+	public Token(String lexeme, TokenKind kind) {
 		this.lexeme = lexeme;
+		this.kind = kind;
 	}
 
 	@Override
@@ -0,0 +1,10 @@
+package calculator.token;
+
+/**
+ * Token categories, used by the parser to dispatch on tokens and to report
+ * what it expected when it rejects an expression.
+ */
+public enum TokenKind {
+	NUMBER, IDENTIFIER, FUNCTION, OPERATOR, LEFT_PAREN, RIGHT_PAREN, LEFT_BRACKET, RIGHT_BRACKET, COMMA, BINDING,
+	END_OF_INPUT
+}
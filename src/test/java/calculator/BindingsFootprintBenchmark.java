@@ -0,0 +1,62 @@
+package calculator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Compares the heap footprint of the default {@link LinkedHashMap} bindings
+ * with {@link PrimitiveBindings}.
+ * <p>
+ * <code>
+ *   java -cp target/classes:target/test-classes calculator.BindingsFootprintBenchmark [count]
+ * </code>
+ * <p>
+ * Keys are allocated before measuring, so the reported bytes per entry only
+ * account for the store itself and its values.
+ */
+public class BindingsFootprintBenchmark {
+
+	public static void main(String[] args) {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+		String[] keys = new String[count];
+		for (int i = 0; i < count; i++) {
+			keys[i] = "v" + i;
+		}
+
+		measure("LinkedHashMap", LinkedHashMap::new, keys);
+		measure("PrimitiveBindings", PrimitiveBindings::new, keys);
+	}
+
+	private static void measure(String name, Supplier<Map<String, Double>> store, String[] keys) {
+		long before = usedMemory();
+		long start = System.nanoTime();
+		Map<String, Double> bindings = store.get();
+		for (int i = 0; i < keys.length; i++) {
+			// values are boxed through the Map interface for both stores
+			bindings.put(keys[i], i + 0.5);
+		}
+		long elapsed = System.nanoTime() - start;
+		long after = usedMemory();
+
+		System.out.printf("%-18s %,d entries: %6.1f bytes/entry, %,d ms to fill%n", name, bindings.size(),
+				(after - before) / (double) keys.length, elapsed / 1000000);
+		// keep the store reachable until measured
+		if (bindings.get(keys[0]) == null) {
+			throw new AssertionError();
+		}
+	}
+
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -1,11 +1,29 @@
 package calculator;
 
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import calculator.numeric.IntegrationResult;
+import calculator.soak.ExpressionGenerator;
+import calculator.token.TokenKind;
+
 /**
  * Integration test for the Calculator.
  */
@@ -141,4 +159,324 @@ public class CalculatorTest
     	calc.eval("(1)2");
     }
     
+    @Test
+    public void integrate(){
+    	assertEquals(1.0 / 3, calc.integrate("x*x", "x", 0, 1).value, epsilon);
+    	assertEquals(-1.0 / 3, calc.integrate("x*x", "x", 1, 0).value, epsilon);
+    }
+    
+    @Test
+    public void integrateSplitInterval(){
+    	calc.eval("k=2");
+    	assertEquals(10000.0, calc.integrate("k*t", "t", 0, 100).value, epsilon);
+    }
+    
+    @Test
+    public void integrateWideInterval(){
+    	IntegrationResult result = calc.integrate("1", "x", 0, 1e12);
+    	assertEquals(1e12, result.value, 1e-3);
+    	assertTrue(result.evaluations < 1000);
+    }
+    
+    @Test(expected=EvaluationException.class)
+    public void integrateEvaluationLimit(){
+    	calc.integrate("sin(x*x)", "x", 0, 1e6);
+    }
+    
+    @Test
+    public void solve(){
+    	assertEquals(Math.sqrt(2), calc.solve("x*x-2", "x", 0, 2).root, epsilon);
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void solveUnbracketedRoot(){
+    	calc.solve("x*x+1", "x", 0, 2);
+    }
+    
+    @Test
+    public void tryEvalSuccess(){
+    	EvalResult result = calc.tryEval("x=1+1");
+    	assertTrue(result.isSuccess());
+    	assertEquals(2.0, result.value, epsilon);
+    	assertEquals(2.0, calc.bindings().get("x"), epsilon);
+    }
+    
+    @Test
+    public void tryEvalLexicalError(){
+    	EvalResult result = calc.tryEval("1+2a");
+    	assertFalse(result.isSuccess());
+    	assertEquals(Diagnostic.Kind.LEXICAL, result.diagnostic.kind);
+    	assertEquals(3, result.diagnostic.position);
+    	assertFalse(calc.bindings().containsKey("_"));
+    }
+    
+    @Test
+    public void tryEvalParsingError(){
+    	Diagnostic diagnostic = calc.tryEval("(1+2)3").diagnostic;
+    	assertEquals(Diagnostic.Kind.PARSING, diagnostic.kind);
+    	assertEquals(5, diagnostic.position);
+    	assertEquals(EnumSet.of(TokenKind.OPERATOR, TokenKind.END_OF_INPUT), diagnostic.expected);
+    }
+    
+    @Test
+    public void tryEvalUnboundVariable(){
+    	Diagnostic diagnostic = calc.tryEval("1+y").diagnostic;
+    	assertEquals(Diagnostic.Kind.EVALUATION, diagnostic.kind);
+    	assertEquals(2, diagnostic.position);
+    }
+    
+    @Test
+    public void validate(){
+    	assertNull(calc.validate("x=sqrt(y)"));
+    	assertFalse(calc.bindings().containsKey("x"));
+    	Diagnostic diagnostic = calc.validate("1*");
+    	assertEquals(2, diagnostic.position);
+    	assertTrue(diagnostic.expected.contains(TokenKind.NUMBER));
+    	assertEquals(Diagnostic.Kind.EMPTY_INPUT, calc.validate("").kind);
+    }
+    
+    @Test
+    public void stacklessExceptions(){
+    	try {
+    		calc.eval("1+");
+    		fail();
+    	} catch (ParsingException ex) {
+    		assertEquals(0, ex.getStackTrace().length);
+    	}
+    }
+    
+    @Test
+    public void exponent(){
+    	assertEquals(1500.0, calc.eval("1.5e3"), epsilon);
+    	assertEquals(0.02, calc.eval("2E-2"), epsilon);
+    }
+    
+    @Test(expected=LexicalException.class)
+    public void exponentWithoutDigit(){
+    	calc.eval("1e+");
+    }
+    
+    @Test
+    public void arrayLiteralBroadcast(){
+    	assertArrayEquals(new double[] { 3, 5, 7 }, calc.evalArray("xs=[1,2,3]*2+1"), epsilon);
+    	assertArrayEquals(new double[] { 2, 4, 6 }, calc.evalArray("xs-[1,1,1]"), epsilon);
+    	assertArrayEquals(new double[] { 2, 3 }, calc.evalArray("sqrt([4,9])"), epsilon);
+    	assertArrayEquals(new double[] { 3, 5, 7 }, calc.arrays().get("xs"), epsilon);
+    }
+    
+    @Test
+    public void rangeAndReductions(){
+    	calc.evalArray("xs=range(0,1e6,1)");
+    	assertEquals(1000000, calc.arrays().get("xs").length);
+    	assertEquals(499999500000.0, calc.eval("sum(xs)"), epsilon);
+    	assertEquals(499999.5, calc.eval("mean(xs)"), epsilon);
+    	assertEquals(1999998.0, calc.eval("max(xs*2)"), epsilon);
+    	assertEquals(1.0, calc.eval("min(xs+1)"), epsilon);
+    	assertEquals(10.0, calc.eval("sum([1,2,3,4])"), epsilon);
+    }
+    
+    @Test
+    public void functionNamesAsVariables() throws IOException {
+    	assertEquals(3.0, calc.eval("sum=max=3"), epsilon);
+    	assertEquals(4.0, calc.eval("sum+1"), epsilon);
+    	assertEquals(3.0, calc.eval("sum(sum)"), epsilon);
+    	calc.evalArray("range=[1,2]");
+    	assertEquals(2.0, calc.eval("max(range)"), epsilon);
+    	
+    	ByteArrayOutputStream out = new ByteArrayOutputStream();
+    	InputStream in = new ByteArrayInputStream("sum,min\n1,2\n".getBytes(StandardCharsets.UTF_8));
+    	assertEquals(0, Calculator.csv(new String[] { "sum*min" }, in, out, System.err));
+    	assertEquals("sum*min\n2.0\n", new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+    
+    @Test
+    public void rangeLengthLimit(){
+    	EvalResult result = calc.tryEval("xs=range(0,1e9,1)");
+    	assertEquals(Diagnostic.Kind.EVALUATION, result.diagnostic.kind);
+    	assertFalse(calc.arrays().containsKey("xs"));
+    	calc.maxArrayLength(10);
+    	assertEquals(10, calc.evalArray("range(0,10,1)").length);
+    	try {
+    		calc.evalArray("range(0,11,1)");
+    		fail();
+    	} catch (EvaluationException ex) {
+    		assertEquals("range of 11 elements exceeds the limit of 10", ex.getMessage());
+    	}
+    }
+    
+    @Test
+    public void arrayReplacesScalarBinding(){
+    	calc.eval("x=1");
+    	calc.evalArray("x=[1,2]");
+    	assertFalse(calc.bindings().containsKey("x"));
+    	calc.eval("x=2");
+    	assertFalse(calc.arrays().containsKey("x"));
+    }
+    
+    @Test(expected=EvaluationException.class)
+    public void arrayLengthMismatch(){
+    	calc.evalArray("[1,2]+[1,2,3]");
+    }
+    
+    @Test(expected=EvaluationException.class)
+    public void evalRejectsArray(){
+    	calc.eval("[1,2]");
+    }
+    
+    @Test(expected=ParsingException.class)
+    public void functionArity(){
+    	calc.eval("range(1,2)");
+    }
+    
+    @Test(expected=ParsingException.class)
+    public void commaOutsideCall(){
+    	calc.eval("(1,2)");
+    }
+    
+    @Test
+    public void unaryMinus(){
+    	assertEquals(-6.0, calc.eval("-2*3"), epsilon);
+    	assertEquals(-6.0, calc.eval("2*-3"), epsilon);
+    	assertEquals(2.0, calc.eval("--2"), epsilon);
+    	assertEquals(-4.0, calc.eval("-sqrt(16)"), epsilon);
+    	assertArrayEquals(new double[] { -1, 2 }, calc.evalArray("-[1,-2]"), epsilon);
+    }
+    
+    @Test
+    public void leftAssociativity(){
+    	assertEquals(5.0, calc.eval("8-2-1"), epsilon);
+    	assertEquals(1.0, calc.eval("8/4/2"), epsilon);
+    }
+    
+    @Test
+    public void chainedAssignment(){
+    	assertEquals(3.0, calc.eval("a=b=1+2"), epsilon);
+    	assertEquals(3.0, calc.bindings().get("a"), epsilon);
+    	assertEquals(3.0, calc.bindings().get("b"), epsilon);
+    }
+    
+    @Test(expected=ParsingException.class)
+    public void nestedAssignment(){
+    	calc.eval("(a=1)");
+    }
+    
+    @Test
+    public void csvErrors() throws IOException {
+    	ByteArrayOutputStream err = new ByteArrayOutputStream();
+    	InputStream in = new ByteArrayInputStream("a,b\n1,2\n".getBytes(StandardCharsets.UTF_8));
+    	int status = Calculator.csv(new String[] { "a+c" }, in, new ByteArrayOutputStream(), new PrintStream(err, true));
+    	assertEquals(1, status);
+    	assertEquals("*** ERROR: Unknown column: c", new String(err.toByteArray(), StandardCharsets.UTF_8).trim());
+    	
+    	err.reset();
+    	in = new ByteArrayInputStream("a\n1\n".getBytes(StandardCharsets.UTF_8));
+    	status = Calculator.csv(new String[] { "a+" }, in, new ByteArrayOutputStream(), new PrintStream(err, true));
+    	assertEquals(1, status);
+    	assertTrue(new String(err.toByteArray(), StandardCharsets.UTF_8).startsWith("*** ERROR: "));
+    }
+    
+    @Test
+    public void longAssignmentChain(){
+    	StringBuilder expression = new StringBuilder();
+    	for (int i = 0; i < Parser.MAX_NESTING - 1; i++) {
+    		expression.append("a=");
+    	}
+    	assertEquals(2.0, calc.eval(expression + "2"), epsilon);
+    	assertEquals(2.0, calc.bindings().get("a"), epsilon);
+    	
+    	for (int i = 0; i < 20000; i++) {
+    		expression.append("b=");
+    	}
+    	EvalResult result = calc.tryEval(expression + "3");
+    	assertEquals(Diagnostic.Kind.PARSING, result.diagnostic.kind);
+    	assertEquals(2.0, calc.bindings().get("a"), epsilon);
+    }
+    
+    @Test
+    public void deepNesting(){
+    	StringBuilder expression = new StringBuilder();
+    	for (int i = 0; i < Parser.MAX_NESTING - 1; i++) {
+    		expression.append("sin(");
+    	}
+    	expression.append("0");
+    	for (int i = 0; i < Parser.MAX_NESTING - 1; i++) {
+    		expression.append(")");
+    	}
+    	assertEquals(0.0, calc.eval(expression.toString()), epsilon);
+    	
+    	expression.setLength(0);
+    	for (int i = 0; i < 600; i++) {
+    		expression.append("(");
+    	}
+    	expression.append("1");
+    	for (int i = 0; i < 600; i++) {
+    		expression.append(")");
+    	}
+    	assertEquals(1.0, calc.eval(expression.toString()), epsilon);
+    	
+    	expression.setLength(0);
+    	for (int i = 0; i < 100000; i++) {
+    		expression.append("sin(");
+    	}
+    	EvalResult result = calc.tryEval(expression.append("0").toString());
+    	assertEquals(Diagnostic.Kind.PARSING, result.diagnostic.kind);
+    	assertEquals(4 * Parser.MAX_NESTING, result.diagnostic.position);
+    	assertEquals(Diagnostic.Kind.PARSING, calc.validate(expression.toString()).kind);
+    }
+    
+    @Test(expected=ParsingException.class)
+    public void assignmentToExpression(){
+    	calc.eval("1+a=1");
+    }
+    
+    /**
+     * Generated expressions split into the smallest units must evaluate to
+     * the same bits as sequentially.
+     */
+    @Test
+    public void parallelMatchesSequential(){
+    	ExpressionGenerator generator = new ExpressionGenerator(5, 64, 6, 4, 0.3, 0.3, 0.0);
+    	for (int i = 0; i < generator.variables(); i++) {
+    		calc.eval(ExpressionGenerator.variable(i) + "=" + (i + 0.5));
+    	}
+    	Calculator parallel = new Calculator(calc.bindings());
+    	ForkJoinPool pool = new ForkJoinPool(4);
+    	try {
+    		parallel.parallel(new ParallelEvaluator(1, 4, false, pool));
+    		calc.parallel(null);
+    		for (int i = 0; i < 500; i++) {
+    			String expression = generator.next().expression;
+    			assertEquals(expression, Double.doubleToLongBits(calc.eval(expression)),
+    					Double.doubleToLongBits(parallel.eval(expression)));
+    		}
+    	} finally {
+    		pool.shutdown();
+    	}
+    }
+    
+    @Test
+    public void parallelLongSum(){
+    	StringBuilder expression = new StringBuilder("s=0");
+    	for (int i = 1; i <= 20000; i++) {
+    		expression.append("+sin(").append(i).append(")*cos(").append(i).append("/3)-").append(i % 7);
+    	}
+    	calc.parallel(null);
+    	double sequential = calc.eval(expression.toString());
+    	calc.parallel(new ParallelEvaluator());
+    	assertEquals(Double.doubleToLongBits(sequential), Double.doubleToLongBits(calc.eval(expression.toString())));
+    	assertEquals(sequential, calc.bindings().get("s"), 0.0);
+
+    	ForkJoinPool pool = new ForkJoinPool(3);
+    	try {
+    		calc.parallel(new ParallelEvaluator(1, 64, true, pool));
+    		double reassociated = calc.eval(expression.toString());
+    		assertEquals(sequential, reassociated, 1e-9 * Math.abs(sequential));
+    		// independent of the number of threads
+    		calc.parallel(new ParallelEvaluator(1, 64, true, ForkJoinPool.commonPool()));
+    		assertEquals(Double.doubleToLongBits(reassociated), Double.doubleToLongBits(calc.eval(expression.toString())));
+    	} finally {
+    		pool.shutdown();
+    	}
+    }
+    
 }
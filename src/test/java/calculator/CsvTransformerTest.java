@@ -0,0 +1,96 @@
+package calculator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CsvTransformerTest {
+
+	private static String transform(String csv, CsvTransformer transformer) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		transformer.transform(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), out);
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void formulas() throws IOException {
+		String csv = "a,label,\"b\"\r\n1,x,2\r\n3,y,4.5\r\n\r\n5,z\r\n";
+		CsvTransformer transformer = new CsvTransformer("s=a+b", "p=s*2", "-a");
+		assertEquals("s,p,-a\n3.0,6.0,-1.0\n7.5,15.0,-3.0\nNaN,NaN,-5.0\n", transform(csv, transformer));
+	}
+
+	@Test
+	public void keepsRowOrderAcrossChunks() throws IOException {
+		StringBuilder csv = new StringBuilder("i,x\n");
+		StringBuilder expected = new StringBuilder("y\n");
+		for (int i = 0; i < 5000; i++) {
+			csv.append(i).append(',').append(i * 0.5).append('\n');
+			expected.append(i + i * 0.5).append('\n');
+		}
+		// chunks shorter than a line force the reader to grow them
+		for (int chunkSize : new int[] { 4, 100, 4096 }) {
+			CsvTransformer transformer = new CsvTransformer(new String[] { "y=i+x" }, 3, chunkSize);
+			assertEquals(expected.toString(), transform(csv.toString(), transformer));
+		}
+	}
+
+	@Test
+	public void lastLineWithoutLineBreak() throws IOException {
+		assertEquals("a\n1.0\n2.0\n", transform("a\n1\n2", new CsvTransformer("a")));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unknownColumn() throws IOException {
+		transform("a,b\n1,2\n", new CsvTransformer("a+c"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void arrayResultsRejected() {
+		new CsvTransformer("sum([1,2])*[1,2]");
+	}
+
+	@Test
+	public void reductions() throws IOException {
+		CsvTransformer transformer = new CsvTransformer("sum([a,b,a])", "m=max(range(0,a,1))+1");
+		assertEquals("\"sum([a,b,a])\",m\n4.0,2.0\n", transform("a,b\n1.5,1\n", transformer));
+	}
+
+	@Test
+	public void chainedAssignment() throws IOException {
+		assertEquals("a,b\n2.0,4.0\n", transform("a\n1\n", new CsvTransformer("a=b=a*2", "b=a*2")));
+	}
+
+	@Test
+	public void parseDouble() {
+		String[] fields = { "0", "-0", "12", "+3.25", "1e3", "1.5E-7", ".5", "5.", "007", "0.000123",
+				"123456789012345678901234567890", "1e400", "4.9e-324", "0.1", "9007199254740993", "NaN", "-Infinity" };
+		for (String field : fields) {
+			assertEquals(field, Double.parseDouble(field), parse(field), 0.0);
+		}
+		assertTrue(Double.isNaN(parse("")));
+		assertTrue(Double.isNaN(parse("abc")));
+		assertTrue(Double.isNaN(parse("1.2.3")));
+		assertEquals(2.5, parse(" \"2.5\" "), 0.0);
+
+		Random random = new Random(3);
+		for (int i = 0; i < 100000; i++) {
+			double value = random.nextDouble() * Math.pow(10, random.nextInt(40) - 20);
+			String field = random.nextBoolean() ? Double.toString(value)
+					: String.format(Locale.ROOT, "%." + random.nextInt(10) + "f", value);
+			assertEquals(field, Double.parseDouble(field), parse(field), 0.0);
+		}
+	}
+
+	private static double parse(String field) {
+		byte[] bytes = field.getBytes(StandardCharsets.ISO_8859_1);
+		return CsvTransformer.parseDouble(bytes, 0, bytes.length);
+	}
+}
@@ -0,0 +1,66 @@
+package calculator;
+
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures how evaluating a large expression scales with the number of
+ * fork-join threads.
+ * <p>
+ * <code>
+ *   java -cp target/classes:target/test-classes calculator.ParallelEvaluationBenchmark [terms] [rounds]
+ * </code>
+ * <p>
+ * The expression is a long sum of trigonometric products, parsed once.
+ * Pools of 1, 2, 4... threads up to the number of processors, at least 2,
+ * are compared with the sequential evaluation, and their results are
+ * checked to be identical bit for bit. A single thread pool falls back to
+ * the sequential evaluation.
+ */
+public class ParallelEvaluationBenchmark {
+
+	private static final int WARMUP_ROUNDS = 5;
+
+	public static void main(String[] args) {
+		int terms = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+		StringBuilder expression = new StringBuilder("0");
+		for (int i = 1; i <= terms; i++) {
+			expression.append("+sin(").append(i).append(")*cos(").append(i).append("/3)-").append(i % 7);
+		}
+		SyntaxTree tree = new Evaluator(new HashMap<>()).parse(expression.toString());
+		// constants only
+		double[] variables = new double[tree.variableCount()];
+
+		int processors = Runtime.getRuntime().availableProcessors();
+		for (int round = 0; round < WARMUP_ROUNDS + rounds; round++) {
+			long start = System.nanoTime();
+			double expected = Evaluator.evaluate(tree, variables);
+			long sequential = System.nanoTime() - start;
+			StringBuilder line = new StringBuilder(String.format("round %2d: sequential %6.1f ms",
+					round - WARMUP_ROUNDS, sequential / 1e6));
+
+			for (int threads = 1; threads <= Math.max(2, processors); threads *= 2) {
+				ForkJoinPool pool = new ForkJoinPool(threads);
+				try {
+					ParallelEvaluator parallel = new ParallelEvaluator(1, ParallelEvaluator.DEFAULT_COST_THRESHOLD,
+							false, pool);
+					start = System.nanoTime();
+					double value = parallel.evaluate(tree, variables);
+					long elapsed = System.nanoTime() - start;
+					if (Double.doubleToLongBits(value) != Double.doubleToLongBits(expected)) {
+						throw new AssertionError(threads + " threads: " + value + " instead of " + expected);
+					}
+					line.append(String.format(", %d threads %6.1f ms (%.2fx)", threads, elapsed / 1e6,
+							sequential / (double) elapsed));
+				} finally {
+					pool.shutdown();
+				}
+			}
+			if (round >= WARMUP_ROUNDS) {
+				System.out.println(line);
+			}
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package calculator;
+
+import java.util.List;
+
+import calculator.soak.ExpressionGenerator;
+import calculator.token.Token;
+
+/**
+ * Compares the throughput of the {@link Parser} with the former
+ * {@link ShuntingYard} parser on generated expressions.
+ * <p>
+ * <code>
+ *   java -cp target/classes:target/test-classes calculator.ParserBenchmark [expressions] [rounds]
+ * </code>
+ * <p>
+ * Tokens are produced once up front, so timings only cover parsing.
+ */
+public class ParserBenchmark {
+
+	private static final int WARMUP_ROUNDS = 5;
+
+	public static void main(String[] args) {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+		ExpressionGenerator generator = new ExpressionGenerator(42, 32, 6, 8, 0.3, 0.2, 0.0);
+		Tokenizer[] tokenizers = new Tokenizer[count];
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		List<Token>[] tokens = new List[count];
+		long tokenCount = 0;
+		for (int i = 0; i < count; i++) {
+			tokenizers[i] = new Tokenizer(generator.next().expression);
+			tokens[i] = tokenizers[i].analyze();
+			tokenCount += tokens[i].size();
+		}
+		System.out.printf("%,d expressions, %.1f tokens on average%n", count, tokenCount / (double) count);
+
+		for (int round = 0; round < WARMUP_ROUNDS + rounds; round++) {
+			long start = System.nanoTime();
+			long checksum = 0;
+			for (int i = 0; i < count; i++) {
+				checksum += ShuntingYard.parse(tokenizers[i], tokens[i]).size();
+			}
+			long shuntingYard = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < count; i++) {
+				checksum -= new Parser(tokenizers[i], tokens[i]).parse().size();
+			}
+			long pratt = System.nanoTime() - start;
+
+			if (checksum != 0) {
+				throw new AssertionError("parsers disagree on the number of nodes");
+			}
+			if (round >= WARMUP_ROUNDS) {
+				System.out.printf("round %2d: shunting-yard %6.0f ns/expr, pratt %6.0f ns/expr, speedup %.2fx%n",
+						round - WARMUP_ROUNDS, shuntingYard / (double) count, pratt / (double) count,
+						shuntingYard / (double) pratt);
+			}
+		}
+	}
+}
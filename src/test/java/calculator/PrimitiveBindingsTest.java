@@ -0,0 +1,94 @@
+package calculator;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for the {@link PrimitiveBindings} store, checked against the
+ * default {@link LinkedHashMap} behavior.
+ */
+
+public class PrimitiveBindingsTest
+{
+
+	private PrimitiveBindings bindings;
+
+	@Before
+	public void setup(){
+		bindings = new PrimitiveBindings();
+	}
+
+	@Test
+    public void putAndGet()
+    {
+		bindings.put("a", 1.0);
+		bindings.putDouble("b", 2.0);
+		assertEquals(1.0, bindings.getDouble("a", Double.NaN), 0);
+		assertEquals(Double.valueOf(2.0), bindings.get("b"));
+		assertNull(bindings.get("c"));
+		assertEquals(-1.0, bindings.getDouble("c", -1.0), 0);
+    }
+
+	@Test
+    public void insertionOrderKeptOnRebind()
+    {
+		bindings.put("b", 1.0);
+		bindings.put("a", 2.0);
+		bindings.put("b", 3.0);
+		assertEquals(Arrays.asList("b", "a"), new ArrayList<>(bindings.keySet()));
+		assertEquals(Double.valueOf(3.0), bindings.get("b"));
+    }
+
+	@Test
+    public void growAndCompactLikeLinkedHashMap()
+    {
+		Map<String, Double> expected = new LinkedHashMap<>();
+		for (int i = 0; i < 10000; i++) {
+			expected.put("v" + i, (double) i);
+			bindings.putDouble("v" + i, i);
+			if (i % 3 == 0) {
+				expected.remove("v" + (i / 2));
+				bindings.remove("v" + (i / 2));
+			}
+		}
+		assertEquals(expected, bindings);
+		assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(bindings.keySet()));
+    }
+
+	@Test
+    public void selectiveAndBulkClear()
+    {
+		bindings.put("a", 1.0);
+		bindings.put("b", 2.0);
+		bindings.put("c", 3.0);
+		bindings.keySet().removeAll(Arrays.asList("a", "c", "d"));
+		assertEquals(1, bindings.size());
+		assertFalse(bindings.containsKey("a"));
+		assertTrue(bindings.containsKey("b"));
+		bindings.clear();
+		assertTrue(bindings.isEmpty());
+		bindings.put("a", 4.0);
+		assertEquals(Double.valueOf(4.0), bindings.get("a"));
+    }
+
+	@Test
+    public void calculatorWithPrimitiveBindings()
+    {
+		Calculator calc = new Calculator(bindings);
+		calc.eval("x=3");
+		assertEquals(6.0, calc.eval("x*2"), 0);
+		assertEquals(Arrays.asList("x", "_"), new ArrayList<>(bindings.keySet()));
+    }
+
+}
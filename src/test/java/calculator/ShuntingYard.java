@@ -0,0 +1,146 @@
+package calculator;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.Stack;
+
+import calculator.token.Decimal;
+import calculator.token.Function;
+import calculator.token.Identifier;
+import calculator.token.Operator;
+import calculator.token.SpecialCharacter;
+import calculator.token.Token;
+import calculator.token.TokenKind;
+
+/**
+ * Shunting-yard parser the {@link Parser} replaced, kept as the baseline of
+ * the {@link ParserBenchmark}. Produces the reverse polish notation of
+ * scalar expressions, with the same error checks as before. Array literals
+ * and unary operators are not supported.
+ */
+final class ShuntingYard {
+
+	private static final Set<TokenKind> IDENTIFIER = Collections.unmodifiableSet(EnumSet.of(TokenKind.IDENTIFIER));
+	private static final Set<TokenKind> EXPECT_OPERAND = Collections.unmodifiableSet(EnumSet.of(TokenKind.NUMBER,
+			TokenKind.IDENTIFIER, TokenKind.FUNCTION, TokenKind.LEFT_PAREN));
+	private static final Set<TokenKind> EXPECT_OPERATOR = Collections.unmodifiableSet(
+			EnumSet.of(TokenKind.OPERATOR, TokenKind.RIGHT_PAREN, TokenKind.COMMA, TokenKind.END_OF_INPUT));
+
+	private ShuntingYard() {
+	}
+
+	/**
+	 * @return the reverse polish notation of the expression, without the
+	 *         assignment prefix if any
+	 */
+	static List<Token> parse(Tokenizer tokenizer, List<Token> tokens) {
+		Iterator<Token> iterator = tokens.iterator();
+		int tokenIndex = 0;
+		if (tokens.size() >= 3 && tokens.get(1) == SpecialCharacter.BINDING) {
+			if (!(tokens.get(0) instanceof Identifier)) {
+				throw new ParsingException("The left side of the assignment character must be an indentifier", 0,
+						IDENTIFIER);
+			}
+			iterator.next();
+			iterator.next();
+			tokenIndex = 2;
+		}
+		return shuntTokens(iterator, tokenIndex, tokenizer);
+	}
+
+	private static List<Token> shuntTokens(Iterator<Token> tokens, int tokenIndex, Tokenizer tokenizer) {
+		List<Token> rpnTokens = new LinkedList<>();
+		Stack<Token> stack = new Stack<>();
+		Stack<Integer> argumentCounts = new Stack<>();
+		boolean expectOperand = true;
+		boolean afterFunction = false;
+		for (; tokens.hasNext(); tokenIndex++) {
+			Token token = tokens.next();
+			int position = tokenizer.position(tokenIndex);
+			if (afterFunction && token != SpecialCharacter.LEFT_PAREN) {
+				throw new ParsingException("A function name must be followed by a left parenthesis", position,
+						EXPECT_OPERAND);
+			}
+			afterFunction = false;
+			if (token instanceof Decimal || token instanceof Identifier) {
+				check(expectOperand, true, position);
+				rpnTokens.add(token);
+				expectOperand = false;
+			} else if (token instanceof Function) {
+				check(expectOperand, true, position);
+				stack.push(token);
+				afterFunction = true;
+			} else if (token instanceof Operator) {
+				check(expectOperand, false, position);
+				while (!stack.empty() && stack.peek() instanceof Operator
+						&& ((Operator) token).precedence <= ((Operator) stack.peek()).precedence) {
+					rpnTokens.add(stack.pop());
+				}
+				stack.push(token);
+				expectOperand = true;
+			} else if (token == SpecialCharacter.LEFT_PAREN) {
+				check(expectOperand, true, position);
+				argumentCounts.push(!stack.empty() && stack.peek() instanceof Function ? 1 : -1);
+				stack.push(token);
+			} else if (token == SpecialCharacter.COMMA) {
+				check(expectOperand, false, position);
+				popOperators(stack, rpnTokens);
+				if (stack.empty() || argumentCounts.peek() < 0) {
+					throw new ParsingException("A comma must separate function arguments", position, EXPECT_OPERATOR);
+				}
+				argumentCounts.push(argumentCounts.pop() + 1);
+				expectOperand = true;
+			} else if (token == SpecialCharacter.RIGHT_PAREN) {
+				check(expectOperand, false, position);
+				popOperators(stack, rpnTokens);
+				if (stack.empty() || stack.peek() != SpecialCharacter.LEFT_PAREN) {
+					throw new ParsingException("Mismatched parenthesis", position, EXPECT_OPERATOR);
+				}
+				stack.pop();
+				int arguments = argumentCounts.pop();
+				if (!stack.empty() && stack.peek() instanceof Function) {
+					Function function = (Function) stack.pop();
+					if (function.arity != arguments) {
+						throw new ParsingException(String.format("%s expects %s argument(s), %s given",
+								function.lexeme, function.arity, arguments), position, EXPECT_OPERATOR);
+					}
+					rpnTokens.add(function);
+				}
+			} else {
+				throw new ParsingException("Unsupported token: " + token.lexeme, position, EXPECT_OPERATOR);
+			}
+		}
+
+		int end = tokenizer.position(tokenIndex);
+		if (afterFunction || expectOperand) {
+			throw new ParsingException("end of input reached whereas operand expected", end, EXPECT_OPERAND);
+		}
+		while (!stack.isEmpty()) {
+			if (stack.peek() == SpecialCharacter.LEFT_PAREN) {
+				throw new ParsingException("Mismatched parenthesis", end, EXPECT_OPERATOR);
+			}
+			rpnTokens.add(stack.pop());
+		}
+		return rpnTokens;
+	}
+
+	private static void popOperators(Stack<Token> stack, List<Token> rpnTokens) {
+		while (!stack.empty() && stack.peek() instanceof Operator) {
+			rpnTokens.add(stack.pop());
+		}
+	}
+
+	private static void check(boolean expectOperand, boolean operand, int position) {
+		if (expectOperand && !operand) {
+			throw new ParsingException("An operator or right parenthesis was parsed whereas an operand was expected",
+					position, EXPECT_OPERAND);
+		} else if (!expectOperand && operand) {
+			throw new ParsingException("An operand was parsed whereas an operator or right parenthesis was expected",
+					position, EXPECT_OPERATOR);
+		}
+	}
+}
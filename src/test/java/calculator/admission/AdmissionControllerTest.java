@@ -0,0 +1,212 @@
+package calculator.admission;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import calculator.Calculator;
+import calculator.Diagnostic;
+import calculator.EvalResult;
+import calculator.admission.AdmissionController.Stats;
+import calculator.admission.AdmissionController.Ticket;
+import calculator.admission.BudgetExceededException.Reason;
+
+public class AdmissionControllerTest {
+
+	@Test
+	public void estimate() {
+		Calculator calc = new Calculator();
+		CostEstimate estimate = calc.estimate("x=sqrt(1+2)*-3");
+		assertEquals(7, estimate.nodes);
+		assertEquals(4, estimate.depth);
+		assertEquals(1 + 1 + 1 + 4 + 1 + 1 + 1, estimate.cost);
+		assertFalse(estimate.arrays);
+		assertEquals(1, calc.estimate("1").depth);
+		assertTrue(calc.estimate("sum(range(0,10,1))").arrays);
+	}
+
+	@Test
+	public void rejectsExpensiveExpressions() {
+		AdmissionController admission = new AdmissionController(100, 1000, Long.MAX_VALUE, 0, TimeUnit.SECONDS);
+		Calculator calc = new Calculator();
+		calc.admission(admission, "a");
+		calc.eval("x=1");
+		StringBuilder expression = new StringBuilder("x");
+		for (int i = 0; i < 10; i++) {
+			expression.append("+sin(x)");
+		}
+		EvalResult result = calc.tryEval(expression.toString());
+		assertEquals(Diagnostic.Kind.EVALUATION, result.diagnostic.kind);
+		try {
+			calc.eval("y=" + expression);
+			fail();
+		} catch (BudgetExceededException ex) {
+			assertEquals(Reason.TOO_EXPENSIVE, ex.reason);
+		}
+		assertFalse(calc.bindings().containsKey("y"));
+
+		Stats stats = admission.stats().get("a");
+		assertEquals(1, stats.admitted);
+		assertEquals(2, stats.rejected(Reason.TOO_EXPENSIVE));
+		// costs 1 and twice 181
+		assertEquals(1, stats.costs[1]);
+		assertEquals(2, stats.costs[8]);
+		assertEquals(255, stats.costPercentile(50));
+		assertEquals(1000, stats.available);
+	}
+
+	@Test
+	public void queuesPerTenant() throws InterruptedException {
+		AdmissionController admission = new AdmissionController(10, 10, Long.MAX_VALUE, 10, TimeUnit.MILLISECONDS);
+		CostEstimate estimate = new CostEstimate(5, 1, 6, false);
+		Ticket ticket = admission.admit("a", estimate);
+		try {
+			try {
+				admission.admit("a", estimate);
+				fail();
+			} catch (BudgetExceededException ex) {
+				assertEquals(Reason.OVERLOADED, ex.reason);
+			}
+			// other tenants are not affected
+			admission.admit("b", estimate).close();
+		} finally {
+			ticket.close();
+		}
+		assertEquals(1, admission.stats().get("a").rejected(Reason.OVERLOADED));
+		assertEquals(1, admission.stats().get("a").admitted);
+		assertEquals(10, admission.stats().get("a").available);
+		assertEquals(1, admission.stats().get("b").admitted);
+
+		// a waiting call is admitted once capacity is returned
+		AdmissionController patient = new AdmissionController(10, 10, Long.MAX_VALUE, 10, TimeUnit.SECONDS);
+		Ticket held = patient.admit("a", estimate);
+		Thread thread = new Thread(() -> {
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException ex) {
+				// release at once
+			}
+			held.close();
+		});
+		thread.start();
+		patient.admit("a", estimate).close();
+		thread.join();
+		assertEquals(2, patient.stats().get("a").admitted);
+		assertEquals(0, patient.stats().get("a").rejected(Reason.OVERLOADED));
+	}
+
+	@Test
+	public void limitsArrayOperations() {
+		AdmissionController admission = new AdmissionController(1000, 1000, Long.MAX_VALUE, 0, TimeUnit.SECONDS);
+		Calculator calc = new Calculator();
+		calc.admission(admission, "a");
+		assertEquals(45.0, calc.eval("sum(range(0,10,1))"), 0.0);
+		try {
+			calc.eval("sum(range(0,1e6,1))");
+			fail();
+		} catch (BudgetExceededException ex) {
+			assertEquals(Reason.OPERATIONS, ex.reason);
+		}
+		assertEquals(1, admission.stats().get("a").rejected(Reason.OPERATIONS));
+		assertEquals(1000, admission.stats().get("a").available);
+	}
+
+	@Test
+	public void arrayExpressionsHoldTheirBudget() {
+		AdmissionController admission = new AdmissionController(100, 150, Long.MAX_VALUE, 0, TimeUnit.SECONDS);
+		Ticket ticket = admission.admit("a", new CostEstimate(2, 2, 5, true));
+		try {
+			assertEquals(50, admission.stats().get("a").available);
+			try {
+				admission.admit("a", new CostEstimate(60, 2, 60, false));
+				fail();
+			} catch (BudgetExceededException ex) {
+				assertEquals(Reason.OVERLOADED, ex.reason);
+			}
+		} finally {
+			ticket.close();
+		}
+		assertEquals(150, admission.stats().get("a").available);
+
+		// element-wise nodes are charged before they run
+		Calculator calc = new Calculator();
+		calc.evalArray("xs=range(0,1000,1)");
+		calc.admission(new AdmissionController(1000, 1000, Long.MAX_VALUE, 0, TimeUnit.SECONDS), "a");
+		try {
+			calc.evalArray("ys=sin(xs)");
+			fail();
+		} catch (BudgetExceededException ex) {
+			assertEquals(Reason.OPERATIONS, ex.reason);
+			assertEquals("Operation budget exceeded: 17000 > 1000", ex.getMessage());
+		}
+		assertFalse(calc.arrays().containsKey("ys"));
+	}
+
+	@Test
+	public void enforcesDeadline() {
+		StringBuilder expression = new StringBuilder("0");
+		for (int i = 0; i < 50000; i++) {
+			expression.append("+sin(").append(i).append(')');
+		}
+		Calculator calc = new Calculator();
+		calc.parallel(null);
+		double expected = calc.eval(expression.toString());
+
+		AdmissionController admission = new AdmissionController(1 << 30, 1 << 30, 0, 0, TimeUnit.NANOSECONDS);
+		calc.admission(admission, "a");
+		EvalResult result = calc.tryEval(expression.toString());
+		assertEquals(Diagnostic.Kind.EVALUATION, result.diagnostic.kind);
+		assertEquals(1, admission.stats().get("a").rejected(Reason.DEADLINE));
+
+		calc.admission(new AdmissionController(1 << 30, 1 << 30, 1, 0, TimeUnit.MINUTES), "a");
+		assertEquals(expected, calc.eval(expression.toString()), 0.0);
+	}
+
+	@Test
+	public void limitsNumericMethods() {
+		AdmissionController admission = new AdmissionController(10000, 10000, Long.MAX_VALUE, 0, TimeUnit.SECONDS);
+		Calculator calc = new Calculator();
+		calc.admission(admission, "a");
+		assertEquals(2.0, calc.integrate("sin(x)", "x", 0, Math.PI).value, 1e-9);
+		assertEquals(Math.PI, calc.solve("sin(x)", "x", 3, 4).root, 1e-12);
+		assertEquals(2, admission.stats().get("a").admitted);
+
+		// each sample is charged the cost of the expression
+		try {
+			calc.integrate("sqrt(x)+sin(x)+cos(x)", "x", 0, 1);
+			fail();
+		} catch (BudgetExceededException ex) {
+			assertEquals(Reason.OPERATIONS, ex.reason);
+		}
+		StringBuilder expression = new StringBuilder("x");
+		for (int i = 0; i < 1000; i++) {
+			expression.append("+sin(x)");
+		}
+		try {
+			calc.solve(expression.toString(), "x", -1, 1);
+			fail();
+		} catch (BudgetExceededException ex) {
+			assertEquals(Reason.TOO_EXPENSIVE, ex.reason);
+		}
+		// compiling is exempt, its evaluations run on behalf of the caller
+		assertEquals(0.0, calc.compile(expression.toString(), "x").evaluate(0), 0.0);
+
+		calc.admission(new AdmissionController(10000, 10000, 0, 0, TimeUnit.NANOSECONDS), "b");
+		try {
+			calc.integrate("sin(x)", "x", 0, Math.PI);
+			fail();
+		} catch (BudgetExceededException ex) {
+			assertEquals(Reason.DEADLINE, ex.reason);
+		}
+
+		Stats stats = admission.stats().get("a");
+		assertEquals(1, stats.rejected(Reason.OPERATIONS));
+		assertEquals(1, stats.rejected(Reason.TOO_EXPENSIVE));
+		assertEquals(10000, stats.available);
+	}
+}
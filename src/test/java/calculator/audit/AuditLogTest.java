@@ -0,0 +1,144 @@
+package calculator.audit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import calculator.Calculator;
+import calculator.ParsingException;
+import calculator.audit.AuditLog.Record;
+
+public class AuditLogTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void recordsEvaluations() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("audit.log");
+		try (AuditLog log = new AuditLog(file, 16)) {
+			Calculator calc = new Calculator();
+			calc.audit(log, 7);
+			calc.eval("x=1+2");
+			calc.tryEval("x*");
+			calc.evalArray("[x,2]");
+			try {
+				calc.eval("(1");
+			} catch (ParsingException ex) {
+				// recorded as well
+			}
+		}
+		List<Record> records = AuditLog.read(file);
+		assertEquals(4, records.size());
+		Record first = records.get(0);
+		assertEquals(0, first.sequence);
+		assertEquals(7, first.session);
+		assertEquals("x=1+2", first.expression);
+		assertEquals(3.0, first.value, 0.0);
+		assertEquals(AuditLog.STATUS_PARSING, records.get(1).status);
+		assertEquals(2, records.get(1).position);
+		assertEquals(AuditLog.STATUS_ARRAY, records.get(2).status);
+		assertEquals(2, records.get(2).position);
+		assertEquals(5.0, records.get(2).value, 0.0);
+		assertEquals(AuditLog.ENTRY_EVAL, records.get(3).entry);
+		assertFalse(records.get(3).isSuccess());
+	}
+
+	@Test
+	public void ringOverwritesOldestRecords() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("ring.log");
+		try (AuditLog log = new AuditLog(file, 4)) {
+			for (int i = 0; i < 6; i++) {
+				log.record(1, AuditLog.ENTRY_EVAL, Integer.toString(i), i);
+			}
+		}
+		// reopening appends after the last record
+		try (AuditLog log = new AuditLog(file, 100)) {
+			assertEquals(4, log.capacity);
+			log.record(1, AuditLog.ENTRY_EVAL, "6", 6);
+		}
+		List<Record> records = AuditLog.read(file);
+		assertEquals(4, records.size());
+		for (int i = 0; i < 4; i++) {
+			assertEquals(i + 3, records.get(i).sequence);
+			assertEquals(Integer.toString(i + 3), records.get(i).expression);
+		}
+	}
+
+	@Test
+	public void truncatesLongExpressions() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("long.log");
+		StringBuilder expression = new StringBuilder("é");
+		while (expression.length() < AuditLog.MAX_EXPRESSION_BYTES) {
+			expression.append("+1");
+		}
+		try (AuditLog log = new AuditLog(file, 4)) {
+			log.record(1, AuditLog.ENTRY_TRY_EVAL, expression.toString(), 0);
+		}
+		Record record = AuditLog.read(file).get(0);
+		assertTrue(record.truncated);
+		assertTrue(expression.toString().startsWith(record.expression));
+		assertEquals(AuditLog.MAX_EXPRESSION_BYTES - 1, record.expression.length());
+	}
+
+	@Test
+	public void replayFlagsDifferences() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("replay.log");
+		try (AuditLog log = new AuditLog(file, 16)) {
+			Calculator first = new Calculator();
+			first.audit(log, 1);
+			Calculator second = new Calculator();
+			second.audit(log, 2);
+			first.tryEval("a=2");
+			second.tryEval("a=3");
+			first.tryEval("a*a");
+			second.tryEval("a*a");
+			first.tryEval("b");
+			// a tampered result
+			log.record(2, AuditLog.ENTRY_TRY_EVAL, "a+1", 5);
+		}
+		StringWriter report = new StringWriter();
+		assertEquals(1, AuditReplay.replay(AuditLog.read(file), new PrintWriter(report)));
+		assertTrue(report.toString(), report.toString().contains("#5 a+1"));
+	}
+
+	@Test
+	public void replaysCommands() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("commands.log");
+		try (AuditLog log = new AuditLog(file, 16)) {
+			Calculator calc = new Calculator();
+			calc.audit(log, 1);
+			calc.tryEval("x=1");
+			calc.tryEval("k=2");
+			calc.clear("x");
+			calc.tryEval("x+1");
+			calc.integrate("k*t", "t", 0, 1);
+			calc.solve("t*t-k", "t", 0, 2);
+			calc.clear();
+			calc.tryEval("k");
+		}
+		List<Record> records = AuditLog.read(file);
+		assertEquals(8, records.size());
+		assertEquals(AuditLog.ENTRY_CLEAR, records.get(2).entry);
+		assertEquals("x", records.get(2).expression);
+		assertEquals(1.0, records.get(2).value, 0.0);
+		assertEquals("k*t t 0.0 1.0", records.get(4).expression);
+		assertEquals(1.0, records.get(4).value, 1e-12);
+		assertEquals(Math.sqrt(2), records.get(5).value, 1e-12);
+		// k and _
+		assertEquals(2.0, records.get(6).value, 0.0);
+
+		StringWriter report = new StringWriter();
+		assertEquals(report.toString(), 0, AuditReplay.replay(records, new PrintWriter(report)));
+	}
+}
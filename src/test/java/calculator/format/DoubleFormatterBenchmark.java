@@ -0,0 +1,90 @@
+package calculator.format;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * Compares writing results with {@link Double#toString(double)} and with a
+ * {@link DoubleFormatter}, as the calculator main loop does.
+ * <p>
+ * <code>
+ *   java -cp target/classes:target/test-classes calculator.format.DoubleFormatterBenchmark [values] [rounds]
+ * </code>
+ * <p>
+ * Values mix random bit patterns with short decimals typical of calculator
+ * results. Output goes to a writer counting characters, so timings exclude
+ * I/O.
+ */
+public class DoubleFormatterBenchmark {
+
+	private static final int WARMUP_ROUNDS = 5;
+
+	/**
+	 * Discards its input, counting characters.
+	 */
+	private static class CountingWriter extends Writer {
+		long count = 0;
+
+		@Override
+		public void write(char[] buffer, int offset, int length) {
+			count += length;
+		}
+
+		@Override
+		public void write(String s) {
+			count += s.length();
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+		Random random = new Random(42);
+		double[] values = new double[count];
+		for (int i = 0; i < count; i++) {
+			if (i % 2 == 0) {
+				double value;
+				do {
+					value = Double.longBitsToDouble(random.nextLong());
+				} while (Double.isNaN(value) || Double.isInfinite(value));
+				values[i] = value;
+			} else {
+				values[i] = random.nextInt(1000000) / 100.0;
+			}
+		}
+
+		DoubleFormatter formatter = new DoubleFormatter();
+		for (int round = 0; round < WARMUP_ROUNDS + rounds; round++) {
+			CountingWriter toStringOut = new CountingWriter();
+			long start = System.nanoTime();
+			for (double value : values) {
+				toStringOut.write(Double.toString(value));
+			}
+			long toString = System.nanoTime() - start;
+
+			CountingWriter formatterOut = new CountingWriter();
+			start = System.nanoTime();
+			for (double value : values) {
+				formatter.format(value).writeTo(formatterOut);
+			}
+			long formatted = System.nanoTime() - start;
+
+			if (round >= WARMUP_ROUNDS) {
+				System.out.printf("round %2d: Double.toString %5.1f ns/value, DoubleFormatter %5.1f ns/value, "
+						+ "speedup %.2fx (%,d vs %,d chars)%n", round - WARMUP_ROUNDS, toString / (double) count,
+						formatted / (double) count, toString / (double) formatted, toStringOut.count,
+						formatterOut.count);
+			}
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package calculator.format;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import org.junit.Test;
+
+import calculator.format.DoubleFormatter.Style;
+
+public class DoubleFormatterTest {
+
+	private final DoubleFormatter shortest = new DoubleFormatter();
+
+	private String shortest(double value) {
+		return shortest.format(value).toString();
+	}
+
+	@Test
+	public void specialValues() {
+		assertEquals("NaN", shortest(Double.NaN));
+		assertEquals("Infinity", shortest(Double.POSITIVE_INFINITY));
+		assertEquals("-Infinity", shortest(Double.NEGATIVE_INFINITY));
+		assertEquals("0.0", shortest(0.0));
+		assertEquals("-0.0", shortest(-0.0));
+	}
+
+	@Test
+	public void layout() {
+		assertEquals("1.0", shortest(1));
+		assertEquals("-12.5", shortest(-12.5));
+		assertEquals("0.1", shortest(0.1));
+		assertEquals("0.3", shortest(0.3));
+		assertEquals("0.30000000000000004", shortest(0.1 + 0.2));
+		assertEquals("0.001", shortest(0.001));
+		assertEquals("1.0E-4", shortest(0.0001));
+		assertEquals("1234567.0", shortest(1234567));
+		assertEquals("1.0E7", shortest(1e7));
+		assertEquals("1.2345E10", shortest(1.2345e10));
+		assertEquals("1.0E23", shortest(1e23));
+		assertEquals("0.002", shortest(2e-3));
+	}
+
+	@Test
+	public void extremes() {
+		assertEquals("4.9E-324", shortest(Double.MIN_VALUE));
+		assertEquals("2.2250738585072014E-308", shortest(Double.MIN_NORMAL));
+		assertEquals("1.7976931348623157E308", shortest(Double.MAX_VALUE));
+		assertEquals("9.007199254740992E15", shortest(9007199254740992.0));
+	}
+
+	/**
+	 * Random bit patterns must parse back to themselves, and no decimal with
+	 * one significant digit less may do so.
+	 */
+	@Test
+	public void roundTripAndShortest() {
+		Random random = new Random(7);
+		for (int i = 0; i < 100000; i++) {
+			double value = Double.longBitsToDouble(random.nextLong());
+			if (Double.isNaN(value) || Double.isInfinite(value)) {
+				continue;
+			}
+			String text = shortest(value);
+			assertEquals(text, value, Double.parseDouble(text), 0.0);
+
+			BigDecimal decimal = new BigDecimal(text);
+			int precision = decimal.stripTrailingZeros().precision();
+			if (precision > 1 && i % 10 == 0) {
+				BigDecimal exact = new BigDecimal(value);
+				MathContext floor = new MathContext(precision - 1, RoundingMode.FLOOR);
+				MathContext ceiling = new MathContext(precision - 1, RoundingMode.CEILING);
+				assertNotEquals(text, value, exact.round(floor).doubleValue(), 0.0);
+				assertNotEquals(text, value, exact.round(ceiling).doubleValue(), 0.0);
+			}
+		}
+	}
+
+	@Test
+	public void fixed() {
+		DoubleFormatter fixed = new DoubleFormatter(Style.FIXED, 2);
+		assertEquals("3.14", fixed.format(Math.PI).toString());
+		assertEquals("-0.50", fixed.format(-0.5).toString());
+		assertEquals("0.01", fixed.format(0.005).toString());
+		assertEquals("0.00", fixed.format(1e-300).toString());
+		assertEquals("1000.00", fixed.format(999.999).toString());
+		assertEquals("100000000000000000000.00", fixed.format(1e20).toString());
+		assertEquals("3", new DoubleFormatter(Style.FIXED, 0).format(2.5).toString());
+	}
+
+	@Test
+	public void scientific() {
+		DoubleFormatter scientific = new DoubleFormatter(Style.SCIENTIFIC, 3);
+		assertEquals("3.142E0", scientific.format(Math.PI).toString());
+		assertEquals("1.000E3", scientific.format(999.99).toString());
+		assertEquals("-1.500E-7", scientific.format(-1.5e-7).toString());
+		assertEquals("0.000E0", scientific.format(0).toString());
+		assertEquals("5E-324", new DoubleFormatter(Style.SCIENTIFIC, 0).format(Double.MIN_VALUE).toString());
+	}
+
+	@Test
+	public void precisionLimits() {
+		DoubleFormatter fixed = new DoubleFormatter(Style.FIXED, DoubleFormatter.MAX_FIXED_PRECISION);
+		assertEquals(Double.MIN_VALUE, Double.parseDouble(fixed.format(Double.MIN_VALUE).toString()), 0.0);
+		assertEquals(Double.MAX_VALUE, Double.parseDouble(fixed.format(Double.MAX_VALUE).toString()), 0.0);
+		DoubleFormatter scientific = new DoubleFormatter(Style.SCIENTIFIC, DoubleFormatter.MAX_SCIENTIFIC_PRECISION);
+		assertEquals("4.90000000000000000E-324", scientific.format(Double.MIN_VALUE).toString());
+		for (int precision : new int[] { -1, DoubleFormatter.MAX_FIXED_PRECISION + 1, Integer.MAX_VALUE }) {
+			try {
+				new DoubleFormatter(Style.FIXED, precision);
+				fail();
+			} catch (IllegalArgumentException ex) {
+				// rejected
+			}
+		}
+		try {
+			new DoubleFormatter(Style.SCIENTIFIC, DoubleFormatter.MAX_SCIENTIFIC_PRECISION + 1);
+			fail();
+		} catch (IllegalArgumentException ex) {
+			// rejected
+		}
+	}
+
+	@Test
+	public void scientificRoundTrip() {
+		DoubleFormatter scientific = new DoubleFormatter(Style.SCIENTIFIC, 16);
+		Random random = new Random(11);
+		for (int i = 0; i < 10000; i++) {
+			double value = Double.longBitsToDouble(random.nextLong());
+			if (!Double.isNaN(value) && !Double.isInfinite(value)) {
+				assertEquals(value, Double.parseDouble(scientific.format(value).toString()), 0.0);
+			}
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package calculator.soak;
+
+import java.util.Random;
+
+/**
+ * Seeded generator of random expressions following the grammar of
+ * {@link calculator.Calculator#eval}.
+ * <p>
+ * Valid expressions only reference the variables named by
+ * {@link #variable(int)}, which the caller is expected to bind beforehand.
+ * Invalid expressions are valid ones with a mutation that always triggers
+ * a {@link calculator.LexicalException} or a
+ * {@link calculator.ParsingException}.
+ * <p>
+ * The same seed and settings always produce the same sequence.
+ */
+public class ExpressionGenerator {
+
+	private static final String[] OPERATORS = { "+", "-", "*", "/" };
+	private static final String[] FUNCTIONS = { "sqrt", "log", "sin", "cos" };
+
+	private final Random random;
+	/**
+	 * upper bound of the number of operands per expression
+	 */
+	private final int maxLength;
+	/**
+	 * upper bound of parenthesis and function call nesting
+	 */
+	private final int maxDepth;
+	/**
+	 * number of distinct variables referenced
+	 */
+	private final int variables;
+	/**
+	 * probability for an operand to be a variable rather than a number
+	 */
+	private final double variableRate;
+	/**
+	 * probability for a sub-expression to be wrapped in a function call
+	 */
+	private final double functionRate;
+	/**
+	 * probability for a generated expression to be invalid
+	 */
+	private final double errorRate;
+
+	public ExpressionGenerator(long seed) {
+		this(seed, 16, 4, 8, 0.3, 0.2, 0.0);
+	}
+
+	public ExpressionGenerator(long seed, int maxLength, int maxDepth, int variables, double variableRate,
+			double functionRate, double errorRate) {
+		if (maxLength < 1 || maxDepth < 0 || variables < 0) {
+			throw new IllegalArgumentException("length must be positive, depth and variables non-negative");
+		}
+		this.random = new Random(seed);
+		this.maxLength = maxLength;
+		this.maxDepth = maxDepth;
+		this.variables = variables;
+		this.variableRate = variables == 0 ? 0 : variableRate;
+		this.functionRate = functionRate;
+		this.errorRate = errorRate;
+	}
+
+	public static String variable(int index) {
+		return "v" + index;
+	}
+
+	public int variables() {
+		return variables;
+	}
+
+	/**
+	 * Generated expression along with its expected outcome.
+	 */
+	public static class Sample {
+		public final String expression;
+		public final boolean valid;
+
+		Sample(String expression, boolean valid) {
+			this.expression = expression;
+			this.valid = valid;
+		}
+
+		@Override
+		public String toString() {
+			return (valid ? "valid: " : "invalid: ") + expression;
+		}
+	}
+
+	public Sample next() {
+		StringBuilder builder = new StringBuilder();
+		expression(builder, 1 + random.nextInt(maxLength), 0);
+		if (random.nextDouble() < errorRate) {
+			return new Sample(corrupt(builder), false);
+		}
+		return new Sample(builder.toString(), true);
+	}
+
+	/**
+	 * Append an expression of {@code operands} operands.
+	 */
+	private void expression(StringBuilder builder, int operands, int depth) {
+		if (depth < maxDepth && random.nextDouble() < functionRate) {
+			builder.append(FUNCTIONS[random.nextInt(FUNCTIONS.length)]).append('(');
+			expression(builder, operands, depth + 1);
+			builder.append(')');
+		} else if (operands == 1) {
+			operand(builder);
+		} else {
+			int left = 1 + random.nextInt(operands - 1);
+			subExpression(builder, left, depth);
+			builder.append(OPERATORS[random.nextInt(OPERATORS.length)]);
+			subExpression(builder, operands - left, depth);
+		}
+	}
+
+	/**
+	 * Operand of a binary operator, parenthesized now and then when the
+	 * depth allows it.
+	 */
+	private void subExpression(StringBuilder builder, int operands, int depth) {
+		if (operands > 1 && depth < maxDepth && random.nextBoolean()) {
+			builder.append('(');
+			expression(builder, operands, depth + 1);
+			builder.append(')');
+		} else {
+			expression(builder, operands, depth);
+		}
+	}
+
+	private void operand(StringBuilder builder) {
+		if (random.nextDouble() < variableRate) {
+			builder.append(variable(random.nextInt(variables)));
+			return;
+		}
+		switch (random.nextInt(3)) {
+		case 0:
+			builder.append(random.nextInt(1000));
+			break;
+		case 1:
+			builder.append(random.nextInt(100)).append('.').append(random.nextInt(1000));
+			break;
+		default:
+			builder.append('.').append(random.nextInt(100));
+			break;
+		}
+	}
+
+	/**
+	 * Apply a mutation every expression of the grammar fails on.
+	 */
+	private String corrupt(StringBuilder builder) {
+		switch (random.nextInt(5)) {
+		case 0:
+			// illegal character
+			builder.insert(random.nextInt(builder.length() + 1), '$');
+			break;
+		case 1:
+			// missing operand
+			builder.append(OPERATORS[random.nextInt(OPERATORS.length)]);
+			break;
+		case 2:
+			// unbalanced right parenthesis
+			builder.append(')');
+			break;
+		case 3:
+			// unbalanced left parenthesis
+			builder.insert(0, '(');
+			break;
+		default:
+			// integer starting with a zero
+			builder.append('*').append('0').append(1 + random.nextInt(9));
+			break;
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,54 @@
+package calculator.soak;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import calculator.Calculator;
+import calculator.LexicalException;
+import calculator.ParsingException;
+
+/**
+ * Checks the generated samples against the actual {@link Calculator}
+ * outcome.
+ */
+
+public class ExpressionGeneratorTest
+{
+
+	@Test
+    public void samplesMatchExpectedOutcome()
+    {
+		ExpressionGenerator generator = new ExpressionGenerator(7, 30, 6, 4, 0.3, 0.2, 0.5);
+		Calculator calc = new Calculator();
+		for (int i = 0; i < generator.variables(); i++) {
+			calc.eval(ExpressionGenerator.variable(i) + "=" + i);
+		}
+		for (int i = 0; i < 5000; i++) {
+			ExpressionGenerator.Sample sample = generator.next();
+			try {
+				calc.eval(sample.expression);
+				if (!sample.valid) {
+					fail("expected failure for " + sample);
+				}
+			} catch (LexicalException | ParsingException ex) {
+				if (sample.valid) {
+					fail("unexpected failure for " + sample + ": " + ex.getMessage());
+				}
+			}
+		}
+    }
+
+	@Test
+    public void seedDeterminesSequence()
+    {
+		ExpressionGenerator first = new ExpressionGenerator(3);
+		ExpressionGenerator second = new ExpressionGenerator(3);
+		for (int i = 0; i < 100; i++) {
+			assertEquals(first.next().expression, second.next().expression);
+		}
+    }
+
+}
@@ -0,0 +1,81 @@
+package calculator.soak;
+
+/**
+ * Fixed-size latency histogram with logarithmic buckets, each power of two
+ * being split into {@value #SUB_BUCKETS} linear sub-buckets. Recorded values
+ * are reported with a relative error below 1/{@value #SUB_BUCKETS}.
+ * <p>
+ * Not thread-safe, use one histogram per thread and {@link #add} them.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+	private final long[] counts = new long[64 * SUB_BUCKETS];
+	private long total = 0;
+	private long max = 0;
+
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		counts[bucket(nanos)]++;
+		total++;
+		max = Math.max(max, nanos);
+	}
+
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] += other.counts[i];
+		}
+		total += other.total;
+		max = Math.max(max, other.max);
+	}
+
+	public long count() {
+		return total;
+	}
+
+	public long max() {
+		return max;
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return upper bound of the bucket holding the requested percentile
+	 */
+	public long percentile(double percentile) {
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(percentile / 100 * total);
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= Math.max(rank, 1)) {
+				return Math.min(upperBound(i), max);
+			}
+		}
+		return max;
+	}
+
+	private static int bucket(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int magnitude = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (magnitude - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (magnitude - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	private static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int magnitude = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		long sub = bucket % SUB_BUCKETS;
+		long width = 1L << (magnitude - SUB_BITS);
+		return (1L << magnitude) + (sub + 1) * width - 1;
+	}
+}
@@ -0,0 +1,258 @@
+package calculator.soak;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import calculator.Calculator;
+import calculator.EvalResult;
+import calculator.LexicalException;
+import calculator.ParsingException;
+
+/**
+ * Drives {@link Calculator#eval} with generated expressions for a fixed
+ * duration and reports throughput, latency percentiles, allocation per
+ * evaluation and GC time.
+ * <p>
+ * <code>
+ *   java -cp target/classes:target/test-classes calculator.soak.SoakHarness [--option value]...
+ * </code>
+ * <p>
+ * Options: {@code --seconds}, {@code --warmup}, {@code --threads},
+ * {@code --seed}, {@code --length}, {@code --depth}, {@code --variables},
+ * {@code --variable-rate}, {@code --function-rate}, {@code --error-rate},
+ * {@code --try-eval} ({@code true} to use {@link Calculator#tryEval}
+ * instead of catching exceptions). Every option takes a value.
+ * <p>
+ * Each thread owns a {@link Calculator}, as its bindings are not
+ * thread-safe, and replays its own pre-generated sample set so that the
+ * generator cost is not measured. Thread {@code i} uses seed
+ * {@code seed + i}, which makes runs with the same options comparable.
+ */
+public class SoakHarness {
+
+	private static final int SAMPLES_PER_THREAD = 10000;
+
+	private double seconds = 10;
+	private double warmup = 2;
+	private int threads = 1;
+	private long seed = 42;
+	private int length = 16;
+	private int depth = 4;
+	private int variables = 8;
+	private double variableRate = 0.3;
+	private double functionRate = 0.2;
+	private double errorRate = 0.0;
+	private boolean tryEval = false;
+
+	public static void main(String[] args) throws Exception {
+		SoakHarness harness = new SoakHarness();
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			harness.option(args[i], args[i + 1]);
+		}
+		if (args.length % 2 != 0) {
+			throw new IllegalArgumentException("missing value for option " + args[args.length - 1]);
+		}
+		harness.run();
+	}
+
+	private void option(String name, String value) {
+		switch (name) {
+		case "--seconds":
+			seconds = Double.parseDouble(value);
+			break;
+		case "--warmup":
+			warmup = Double.parseDouble(value);
+			break;
+		case "--threads":
+			threads = Integer.parseInt(value);
+			break;
+		case "--seed":
+			seed = Long.parseLong(value);
+			break;
+		case "--length":
+			length = Integer.parseInt(value);
+			break;
+		case "--depth":
+			depth = Integer.parseInt(value);
+			break;
+		case "--variables":
+			variables = Integer.parseInt(value);
+			break;
+		case "--variable-rate":
+			variableRate = Double.parseDouble(value);
+			break;
+		case "--function-rate":
+			functionRate = Double.parseDouble(value);
+			break;
+		case "--error-rate":
+			errorRate = Double.parseDouble(value);
+			break;
+		case "--try-eval":
+			tryEval = Boolean.parseBoolean(value);
+			break;
+		default:
+			throw new IllegalArgumentException("unrecognized option: " + name);
+		}
+	}
+
+	/**
+	 * Per-thread measurements.
+	 */
+	private static class Result {
+		final LatencyHistogram latencies = new LatencyHistogram();
+		long errors = 0;
+		/**
+		 * samples whose outcome did not match the generator expectation
+		 */
+		long mismatches = 0;
+		long allocatedBytes = 0;
+		/**
+		 * sum of the results, keeps evaluations observable
+		 */
+		double checksum = 0;
+	}
+
+	private void run() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			if (warmup > 0) {
+				collect(executor, warmup);
+			}
+			long gcCount = gcCount();
+			long gcMillis = gcMillis();
+			long start = System.nanoTime();
+			List<Result> results = collect(executor, seconds);
+			double elapsed = (System.nanoTime() - start) / 1e9;
+			report(results, elapsed, gcCount() - gcCount, gcMillis() - gcMillis);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private List<Result> collect(ExecutorService executor, double duration) throws Exception {
+		List<Future<Result>> futures = new ArrayList<>();
+		for (int i = 0; i < threads; i++) {
+			long threadSeed = seed + i;
+			futures.add(executor.submit(() -> drive(threadSeed, duration)));
+		}
+		List<Result> results = new ArrayList<>();
+		for (Future<Result> future : futures) {
+			results.add(future.get());
+		}
+		return results;
+	}
+
+	private Result drive(long threadSeed, double duration) {
+		ExpressionGenerator generator = new ExpressionGenerator(threadSeed, length, depth, variables, variableRate,
+				functionRate, errorRate);
+		ExpressionGenerator.Sample[] samples = new ExpressionGenerator.Sample[SAMPLES_PER_THREAD];
+		for (int i = 0; i < samples.length; i++) {
+			samples[i] = generator.next();
+		}
+		Calculator calc = new Calculator();
+		for (int i = 0; i < generator.variables(); i++) {
+			calc.eval(ExpressionGenerator.variable(i) + "=" + (i + 1) + ".5");
+		}
+
+		Result result = new Result();
+		long allocatedBefore = allocatedBytes();
+		long deadline = System.nanoTime() + (long) (duration * 1e9);
+		int i = 0;
+		while (System.nanoTime() < deadline) {
+			ExpressionGenerator.Sample sample = samples[i];
+			boolean failed = false;
+			long start = System.nanoTime();
+			if (tryEval) {
+				EvalResult evalResult = calc.tryEval(sample.expression);
+				failed = !evalResult.isSuccess();
+				result.checksum += evalResult.value;
+			} else {
+				try {
+					result.checksum += calc.eval(sample.expression);
+				} catch (LexicalException | ParsingException ex) {
+					failed = true;
+				}
+			}
+			result.latencies.record(System.nanoTime() - start);
+			if (failed) {
+				result.errors++;
+			}
+			if (failed == sample.valid) {
+				result.mismatches++;
+			}
+			i = i + 1 == samples.length ? 0 : i + 1;
+		}
+		result.allocatedBytes = allocatedBefore < 0 ? -1 : allocatedBytes() - allocatedBefore;
+		return result;
+	}
+
+	private void report(List<Result> results, double elapsed, long gcCount, long gcMillis) {
+		LatencyHistogram latencies = new LatencyHistogram();
+		long errors = 0;
+		long mismatches = 0;
+		long allocated = 0;
+		boolean allocationAvailable = true;
+		for (Result result : results) {
+			latencies.add(result.latencies);
+			errors += result.errors;
+			mismatches += result.mismatches;
+			allocated += result.allocatedBytes;
+			allocationAvailable &= result.allocatedBytes >= 0;
+		}
+		long evaluations = latencies.count();
+
+		System.out.printf("threads            %d%n", threads);
+		System.out.printf("api                %s%n", tryEval ? "tryEval" : "eval");
+		System.out.printf("duration           %.1f s%n", elapsed);
+		System.out.printf("evaluations        %,d%n", evaluations);
+		System.out.printf("errors             %,d (%.1f%%)%n", errors, 100.0 * errors / Math.max(evaluations, 1));
+		System.out.printf("mismatches         %,d%n", mismatches);
+		System.out.printf("throughput         %,.0f eval/s%n", evaluations / elapsed);
+		System.out.printf("latency p50        %,d ns%n", latencies.percentile(50));
+		System.out.printf("latency p90        %,d ns%n", latencies.percentile(90));
+		System.out.printf("latency p99        %,d ns%n", latencies.percentile(99));
+		System.out.printf("latency p99.9      %,d ns%n", latencies.percentile(99.9));
+		System.out.printf("latency max        %,d ns%n", latencies.max());
+		if (allocationAvailable) {
+			System.out.printf("allocation         %,.0f bytes/eval%n", (double) allocated / Math.max(evaluations, 1));
+		} else {
+			System.out.printf("allocation         unavailable%n");
+		}
+		System.out.printf("gc                 %d collections, %d ms (%.2f%%)%n", gcCount, gcMillis,
+				gcMillis / (elapsed * 10));
+	}
+
+	/**
+	 * @return bytes allocated by the current thread, or a negative value when
+	 *         the JVM does not expose it
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(bean.getCollectionCount(), 0);
+		}
+		return count;
+	}
+
+	private static long gcMillis() {
+		long millis = 0;
+		for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+			millis += Math.max(bean.getCollectionTime(), 0);
+		}
+		return millis;
+	}
+}